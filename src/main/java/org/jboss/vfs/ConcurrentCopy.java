@@ -0,0 +1,187 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * A single parallel copy of file trees.  The trees are walked first on the calling thread, which creates all the
+ * target directories in that one pass and collects the files to copy.  Each file is then an item of the {@link
+ * ConcurrentWork}, so a worker which gets stuck on a large file holds up nothing else.
+ * <p/>
+ * Real files are copied with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, and
+ * virtual files with {@link VirtualFile#transferTo(java.nio.channels.WritableByteChannel)}, which reads archive
+ * entries without extracting them first.
+ */
+final class ConcurrentCopy extends ConcurrentWork<ConcurrentCopy.Copy> {
+
+    private final List<Copy> copies = new ArrayList<Copy>();
+
+    ConcurrentCopy(Executor executor) {
+        super(executor, IO_PARALLELISM);
+    }
+
+    /**
+     * Add a real file or directory tree, creating the target directories.
+     *
+     * @param original the original file or directory
+     * @param target the target file or directory
+     */
+    void addTree(File original, File target) {
+        if (original.isDirectory()) {
+            target.mkdir();
+            final File[] files = original.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    addTree(file, new File(target, file.getName()));
+                }
+            }
+        } else {
+            copies.add(new Copy(original, target));
+        }
+    }
+
+    /**
+     * Add a virtual file or directory tree, creating the target directories.
+     *
+     * @param original the original virtual file or directory
+     * @param target the target file or directory
+     */
+    void addTree(VirtualFile original, File target) {
+        if (original.isDirectory()) {
+            target.mkdir();
+            addChildren(original, target);
+        } else {
+            copies.add(new Copy(original, target));
+        }
+    }
+
+    private void addChildren(VirtualFile directory, File target) {
+        for (Map.Entry<VirtualFile, FileAttributes> entry : directory.getChildAttributes().entrySet()) {
+            final VirtualFile child = entry.getKey();
+            final File childTarget = new File(target, child.getName());
+            if (entry.getValue().isDirectory()) {
+                childTarget.mkdir();
+                addChildren(child, childTarget);
+            } else {
+                copies.add(new Copy(child, childTarget));
+            }
+        }
+    }
+
+    /**
+     * Add the children of a virtual directory, with the semantics of {@link VFSUtils#copyChildrenRecursive(VirtualFile,
+     * VirtualFile)}.
+     *
+     * @param original the directory to copy the children from
+     * @param target the directory to copy the children to
+     * @throws IOException if a target file cannot be determined
+     * @throws IllegalArgumentException if a target directory cannot be created
+     */
+    void addChildren(VirtualFile original, VirtualFile target) throws IOException {
+        for (Map.Entry<VirtualFile, FileAttributes> entry : original.getChildAttributes().entrySet()) {
+            final VirtualFile child = entry.getKey();
+            final VirtualFile targetChild = target.getChild(child.getName());
+            if (entry.getValue().isDirectory()) {
+                if (! targetChild.getPhysicalFile().mkdir()) {
+                    throw new IllegalArgumentException("Problems creating new directory: " + targetChild);
+                }
+                addChildren(child, targetChild);
+            } else {
+                copies.add(new Copy(child, targetChild.getPhysicalFile()));
+            }
+        }
+    }
+
+    /**
+     * Copy the files added so far, returning once all are copied.  The first exception stops the copy and is rethrown.
+     *
+     * @throws IOException if a file cannot be copied
+     */
+    void run() throws IOException {
+        submitAll(copies);
+        copies.clear();
+        runItems();
+    }
+
+    void process(Copy copy) throws IOException {
+        if (copy.source instanceof File) {
+            copy((File) copy.source, copy.target);
+        } else {
+            copy((VirtualFile) copy.source, copy.target);
+        }
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        final FileInputStream is = new FileInputStream(source);
+        try {
+            final FileOutputStream os = new FileOutputStream(target);
+            try {
+                final FileChannel in = is.getChannel();
+                final FileChannel out = os.getChannel();
+                final long size = in.size();
+                long position = 0L;
+                while (position < size) {
+                    final long n = in.transferTo(position, size - position, out);
+                    if (n <= 0L) {
+                        break;
+                    }
+                    position += n;
+                }
+                os.close();
+            } finally {
+                VFSUtils.safeClose(os);
+            }
+        } finally {
+            VFSUtils.safeClose(is);
+        }
+    }
+
+    private static void copy(VirtualFile source, File target) throws IOException {
+        final FileOutputStream os = new FileOutputStream(target);
+        try {
+            source.transferTo(os.getChannel());
+            os.close();
+        } finally {
+            VFSUtils.safeClose(os);
+        }
+    }
+
+    static final class Copy {
+        /** A {@code File} or a {@code VirtualFile} */
+        private final Object source;
+        private final File target;
+
+        Copy(Object source, File target) {
+            this.source = source;
+            this.target = target;
+        }
+    }
+}
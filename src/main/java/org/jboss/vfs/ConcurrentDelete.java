@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single parallel deletion of a real directory tree.  Each directory is an item of the {@link ConcurrentWork};
+ * emptying it deletes its files and submits its subdirectories.  Each directory counts the subdirectories it is waiting
+ * for; the thread which empties the last of them deletes the directory itself, and so on up the tree.
+ */
+final class ConcurrentDelete extends ConcurrentWork<ConcurrentDelete.Directory> {
+
+    private final AtomicLong deleted;
+    private volatile boolean failed;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param executor the executor to run helper tasks on
+     * @param parallelism the maximum number of helper tasks
+     * @param deleted the counter to add the number of deleted files and directories to
+     */
+    ConcurrentDelete(Executor executor, int parallelism, AtomicLong deleted) {
+        super(executor, parallelism);
+        this.deleted = deleted;
+    }
+
+    /**
+     * Delete a file or directory tree.  Like {@link VFSUtils#recursiveDelete(File)}, this carries on past files which
+     * cannot be deleted.
+     *
+     * @param root the file or directory
+     * @return {@code true} if everything was deleted, {@code false} if anything is left or the calling thread was
+     *         interrupted; either way, no helper is deleting anything any more
+     */
+    boolean run(File root) {
+        if (! root.isDirectory())
+            return delete(root);
+        submit(new Directory(root, null));
+        try {
+            runItems();
+        } catch (IOException e) {
+            // interrupted; the interrupt status is set again
+            return false;
+        }
+        return ! failed;
+    }
+
+    void process(Directory directory) {
+        try {
+            final File[] files = directory.file.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isDirectory()) {
+                        directory.remaining.incrementAndGet();
+                        submit(new Directory(file, directory));
+                    } else {
+                        delete(file);
+                    }
+                }
+            }
+            // the directory no longer waits for its own listing
+            for (Directory current = directory; current != null && current.remaining.decrementAndGet() == 0; current = current.parent) {
+                delete(current.file);
+            }
+        } catch (RuntimeException e) {
+            // carry on with the rest of the tree
+            failed = true;
+        }
+    }
+
+    private boolean delete(File file) {
+        if (file.delete()) {
+            deleted.incrementAndGet();
+            return true;
+        }
+        if (file.exists()) {
+            failed = true;
+            return false;
+        }
+        return true;
+    }
+
+    static final class Directory {
+        private final File file;
+        private final Directory parent;
+        /** The subdirectories not deleted yet, plus one until the directory itself has been listed */
+        private final AtomicInteger remaining = new AtomicInteger(1);
+
+        Directory(File file, Directory parent) {
+            this.file = file;
+            this.parent = parent;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.jboss.vfs.spi.ZipCentralDirectory;
+import org.jboss.vfs.util.BufferPool;
+
+/**
+ * A single parallel expansion of a zip file.  The central directory is read first on the calling thread, which creates
+ * the whole directory skeleton in that one pass.  The entries are then extracted as the items of a {@link
+ * ConcurrentWork}.  All the workers share one channel to the archive and read it with positional reads, so they never
+ * wait for each other; each inflates with its own {@link Inflater}, through buffers from the {@linkplain
+ * BufferPool#getDefault() default buffer pool}.
+ * <p/>
+ * Large entries are submitted one at a time, largest first, so that the longest extractions start early rather than
+ * being left for the end.  The remaining small entries are submitted in batches in archive order, which keeps the
+ * items cheap and the reads of each worker sequential.
+ * <p/>
+ * Only plain archives are handled: zip64 archives, encrypted entries and compression methods other than stored and
+ * deflated make {@link #run(File)} return {@code false} before anything is written, so that the caller can fall back
+ * to {@link VFSUtils#unzip(File, File)}.
+ */
+final class ConcurrentUnzip extends ConcurrentWork<ConcurrentUnzip.Entry[]> {
+
+    /** The uncompressed size from which an entry is extracted on its own */
+    static final long LARGE_ENTRY_SIZE = 256 * 1024;
+    /** The number of small entries claimed at once */
+    static final int SMALL_BATCH = 32;
+
+    private static final int FLAG_ENCRYPTED = 0x01;
+
+    private static final Comparator<Entry> LARGEST_FIRST = new Comparator<Entry>() {
+        public int compare(Entry o1, Entry o2) {
+            return o1.size > o2.size ? -1 : o1.size < o2.size ? 1 : 0;
+        }
+    };
+
+    private final File zipFile;
+
+    private FileChannel channel;
+    private long archiveSize;
+    /** The inflaters not in use, one per worker at most */
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+
+    ConcurrentUnzip(File zipFile, Executor executor) {
+        super(executor, IO_PARALLELISM);
+        this.zipFile = zipFile;
+    }
+
+    /**
+     * Expand the archive into a directory, which must exist, returning once all the entries are extracted.  The first
+     * exception stops the expansion and is rethrown; the directory may then contain a partially-extracted archive.
+     *
+     * @param destDir the destination directory
+     * @return {@code true} if the archive was expanded, {@code false} if it is not supported and nothing was written
+     * @throws IOException if an I/O error occurs
+     */
+    boolean run(File destDir) throws IOException {
+        channel = new RandomAccessFile(zipFile, "r").getChannel();
+        try {
+            archiveSize = channel.size();
+            final List<Entry> list = readEntries();
+            if (list == null) {
+                return false;
+            }
+            createDirectories(list, destDir);
+            schedule(list);
+            runItems();
+            return true;
+        } finally {
+            // the workers are all done by now
+            Inflater inflater;
+            while ((inflater = inflaters.poll()) != null) {
+                inflater.end();
+            }
+            VFSUtils.safeClose(channel);
+        }
+    }
+
+    /**
+     * Read the entries from the central directory.
+     *
+     * @return the entries in archive order, or {@code null} if the archive is not supported
+     * @throws IOException if an I/O error occurs
+     */
+    private List<Entry> readEntries() throws IOException {
+        final List<ZipCentralDirectory.Entry> zipEntries = ZipCentralDirectory.read(channel);
+        if (zipEntries == null) {
+            return null;
+        }
+        final List<Entry> list = new ArrayList<Entry>(zipEntries.size());
+        for (ZipCentralDirectory.Entry zipEntry : zipEntries) {
+            final int method = zipEntry.getMethod();
+            if ((zipEntry.getFlags() & FLAG_ENCRYPTED) != 0 || (method != ZipEntry.STORED && method != ZipEntry.DEFLATED)) {
+                return null;
+            }
+            list.add(new Entry(zipEntry));
+        }
+        return list;
+    }
+
+    /**
+     * Create the directories of all the entries, and resolve the target files of the others.  Invalid entries are
+     * skipped, and of several entries with the same name only the last is kept, as with {@link VFSUtils#unzip(File,
+     * File)}.
+     */
+    private static void createDirectories(List<Entry> list, File destDir) {
+        final Set<File> createdDirs = new HashSet<File>();
+        for (Entry entry : list) {
+            final File target = VFSUtils.getUnzipTarget(destDir, entry.name, createdDirs);
+            if (! entry.name.endsWith("/")) {
+                entry.target = target;
+            }
+        }
+        final Set<File> targets = new HashSet<File>();
+        for (int i = list.size() - 1; i >= 0; i--) {
+            final Entry entry = list.get(i);
+            if (entry.target != null && ! targets.add(entry.target)) {
+                entry.target = null;
+            }
+        }
+    }
+
+    private void schedule(List<Entry> list) {
+        final List<Entry> large = new ArrayList<Entry>();
+        final List<Entry> small = new ArrayList<Entry>(list.size());
+        for (Entry entry : list) {
+            if (entry.target != null) {
+                (entry.size >= LARGE_ENTRY_SIZE ? large : small).add(entry);
+            }
+        }
+        Collections.sort(large, LARGEST_FIRST);
+        final List<Entry[]> batches = new ArrayList<Entry[]>(large.size() + (small.size() + SMALL_BATCH - 1) / SMALL_BATCH);
+        for (Entry entry : large) {
+            batches.add(new Entry[] { entry });
+        }
+        for (int i = 0; i < small.size(); i += SMALL_BATCH) {
+            batches.add(small.subList(i, Math.min(i + SMALL_BATCH, small.size())).toArray(new Entry[0]));
+        }
+        submitAll(batches);
+    }
+
+    void process(Entry[] batch) throws IOException {
+        final BufferPool pool = BufferPool.getDefault();
+        final ByteBuffer inputBuffer = pool.take();
+        final ByteBuffer outputBuffer = pool.take();
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            for (int i = 0; i < batch.length && ! isStopped(); i++) {
+                extract(batch[i], inputBuffer.array(), outputBuffer.array(), inflater);
+            }
+        } finally {
+            inflaters.add(inflater);
+            pool.release(inputBuffer);
+            pool.release(outputBuffer);
+        }
+    }
+
+    private void extract(Entry entry, byte[] input, byte[] output, Inflater inflater) throws IOException {
+        // read the local header together with the data, which is all of it for small entries
+        final ByteBuffer buffer = ByteBuffer.wrap(input).order(ByteOrder.LITTLE_ENDIAN);
+        final long length = Math.min(archiveSize - entry.localHeader, ZipCentralDirectory.LOCAL_HEADER_SIZE + entry.headerLength + entry.compressedSize);
+        buffer.limit((int) Math.min(input.length, length));
+        final int dataOffset = readFully(buffer, entry.localHeader) ? ZipCentralDirectory.getLocalHeaderLength(buffer) : -1;
+        if (dataOffset == -1) {
+            throw new ZipException("Invalid local header for entry " + entry.name + " in " + zipFile);
+        }
+        final long dataPosition = entry.localHeader + dataOffset;
+        if (dataPosition + entry.compressedSize > archiveSize) {
+            throw new ZipException("Truncated entry " + entry.name + " in " + zipFile);
+        }
+        final FileOutputStream os = new FileOutputStream(entry.target);
+        try {
+            if (entry.method == ZipEntry.STORED) {
+                if (dataOffset + entry.size <= buffer.limit()) {
+                    os.write(input, dataOffset, (int) entry.size);
+                } else {
+                    transfer(dataPosition, entry.size, os.getChannel());
+                }
+            } else {
+                final int buffered = (int) Math.max(0L, Math.min(buffer.limit() - dataOffset, entry.compressedSize));
+                inflater.reset();
+                inflater.setInput(input, dataOffset, buffered);
+                inflate(entry, dataPosition + buffered, entry.compressedSize - buffered, input, output, inflater, os);
+            }
+            // allow an error on close to terminate the unzip
+            os.close();
+        } finally {
+            VFSUtils.safeClose(os);
+        }
+    }
+
+    private void inflate(Entry entry, long position, long remaining, byte[] input, byte[] output, Inflater inflater, FileOutputStream os) throws IOException {
+        boolean padded = false;
+        long written = 0L;
+        while (! inflater.finished()) {
+            if (inflater.needsInput()) {
+                if (remaining > 0L) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(input, 0, (int) Math.min(input.length, remaining));
+                    if (! readFully(buffer, position)) {
+                        throw new ZipException("Truncated entry " + entry.name + " in " + zipFile);
+                    }
+                    inflater.setInput(input, 0, buffer.limit());
+                    position += buffer.limit();
+                    remaining -= buffer.limit();
+                } else if (! padded) {
+                    // a raw inflater may need one byte past the end of the data
+                    input[0] = 0;
+                    inflater.setInput(input, 0, 1);
+                    padded = true;
+                } else {
+                    throw new ZipException("Unexpected end of entry " + entry.name + " in " + zipFile);
+                }
+            }
+            final int n;
+            try {
+                n = inflater.inflate(output);
+            } catch (DataFormatException e) {
+                final ZipException ze = new ZipException("Invalid data in entry " + entry.name + " in " + zipFile + ": " + e.getMessage());
+                ze.initCause(e);
+                throw ze;
+            }
+            if (n == 0 && inflater.needsDictionary()) {
+                throw new ZipException("Invalid data in entry " + entry.name + " in " + zipFile);
+            }
+            os.write(output, 0, n);
+            written += n;
+        }
+        if (written != entry.size) {
+            throw new ZipException("Invalid size of entry " + entry.name + " in " + zipFile + ": expected " + entry.size + ", got " + written);
+        }
+    }
+
+    private void transfer(long position, long count, FileChannel target) throws IOException {
+        final long end = position + count;
+        while (position < end) {
+            final long n = channel.transferTo(position, end - position, target);
+            if (n <= 0L) {
+                throw new ZipException("Truncated archive " + zipFile);
+            }
+            position += n;
+        }
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        return ZipCentralDirectory.readFully(channel, buffer, position);
+    }
+
+    static final class Entry {
+        private final String name;
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeader;
+        /** The length of the name and extra field in the central directory, usually the same in the local header */
+        private final int headerLength;
+        /** The file to extract to, or {@code null} if the entry is skipped */
+        private File target;
+
+        Entry(ZipCentralDirectory.Entry zipEntry) {
+            name = zipEntry.getName();
+            method = zipEntry.getMethod();
+            compressedSize = zipEntry.getCompressedSize();
+            size = zipEntry.getSize();
+            localHeader = zipEntry.getLocalHeader();
+            headerLength = zipEntry.getNameAndExtraLength();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * A single parallel walk of a virtual file tree.  Each directory is an item of the {@link ConcurrentWork}; listing it
+ * visits its children and submits the subdirectories to recurse into.
+ */
+final class ConcurrentVisit extends ConcurrentWork<VirtualFile> {
+
+    private final ConcurrentVirtualFileVisitor visitor;
+    private final VisitorAttributes visitorAttributes;
+
+    ConcurrentVisit(ConcurrentVirtualFileVisitor visitor, Executor executor, int parallelism) {
+        super(executor, parallelism);
+        this.visitor = visitor;
+        visitorAttributes = visitor.getAttributes();
+    }
+
+    void run(VirtualFile root) throws IOException {
+        if (visitorAttributes.isIncludeRoot())
+            visitor.visit(root);
+        if (! root.isDirectory())
+            return;
+        submit(root);
+        runItems();
+    }
+
+    void process(VirtualFile directory) {
+        for (Map.Entry<VirtualFile, FileAttributes> entry : directory.getChildAttributes().entrySet()) {
+            final VirtualFile child = entry.getKey();
+            // Always visit a leaf, and visit directories when leaves only is false
+            if (! entry.getValue().isDirectory() || ! visitorAttributes.isLeavesOnly())
+                visitor.visit(child);
+            if (child.isDirectory(entry.getValue()) && visitorAttributes.isRecurse(child))
+                submit(child);
+        }
+    }
+}
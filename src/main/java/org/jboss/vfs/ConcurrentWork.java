@@ -0,0 +1,209 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single piece of parallel work, made of items which are processed by up to {@code parallelism} helper tasks on the
+ * executor as well as by the calling thread.  The calling thread always takes part, so the work completes even if the
+ * executor is saturated, shut down, or is the very pool the caller is running on.  Items may submit further items as
+ * they are processed.
+ * <p/>
+ * The first exception thrown while processing an item stops the work: the remaining items are dropped, and the
+ * exception is rethrown once the items being processed are done.  Interrupting the calling thread stops the work the
+ * same way.  Either way, {@link #runItems()} only returns once no helper is processing an item any more, so the caller
+ * may safely release whatever the items work on.
+ *
+ * @param <T> the type of the items
+ */
+abstract class ConcurrentWork<T> {
+
+    /**
+     * The maximum number of helper tasks for work which mostly waits for the disks, such as copying or deleting files;
+     * this is more than the number of processors.
+     */
+    static final int IO_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private final Executor executor;
+    private final int parallelism;
+
+    private final Queue<T> items = new ConcurrentLinkedQueue<T>();
+    /** Items queued or being processed */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger helpers = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private final Object lock = new Object();
+
+    private final Runnable helper = new Runnable() {
+        public void run() {
+            try {
+                T item;
+                while ((item = items.poll()) != null) {
+                    execute(item);
+                }
+            } finally {
+                helpers.decrementAndGet();
+            }
+        }
+    };
+
+    /**
+     * Construct a new instance.
+     *
+     * @param executor the executor to run helper tasks on
+     * @param parallelism the maximum number of helper tasks
+     */
+    ConcurrentWork(Executor executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Process an item.  This may be called from several threads at once.
+     *
+     * @param item the item
+     * @throws IOException if an I/O error occurs, which stops the work
+     */
+    abstract void process(T item) throws IOException;
+
+    /**
+     * Submit an item, starting a helper task for it if there are not enough yet.
+     *
+     * @param item the item
+     */
+    final void submit(T item) {
+        pending.incrementAndGet();
+        items.add(item);
+        signal(1);
+    }
+
+    /**
+     * Submit several items at once.
+     *
+     * @param items the items
+     */
+    final void submitAll(Collection<? extends T> items) {
+        if (items.isEmpty())
+            return;
+        pending.addAndGet(items.size());
+        this.items.addAll(items);
+        signal(items.size());
+    }
+
+    /**
+     * Determine whether the work has been stopped by a failure or an interrupt.  Items which process several things in
+     * turn may check this to stop early.
+     *
+     * @return {@code true} if the work is stopped
+     */
+    final boolean isStopped() {
+        return failure.get() != null;
+    }
+
+    /**
+     * Process the submitted items, and any items they submit, on the calling thread and the helper tasks, returning
+     * once all are processed.
+     *
+     * @throws IOException if processing an item failed, or {@code InterruptedIOException} if the calling thread was
+     * interrupted
+     */
+    final void runItems() throws IOException {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                final T item = items.poll();
+                if (item != null) {
+                    execute(item);
+                    continue;
+                }
+                synchronized (lock) {
+                    while (items.isEmpty() && pending.get() != 0) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            // drop the remaining items, but wait for those being processed
+                            interrupted = true;
+                            failure.compareAndSet(null, new InterruptedIOException("Interrupted while waiting for parallel work"));
+                        }
+                    }
+                }
+                if (pending.get() == 0)
+                    break;
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        final Throwable throwable = failure.get();
+        if (throwable instanceof IOException)
+            throw (IOException) throwable;
+        if (throwable instanceof RuntimeException)
+            throw (RuntimeException) throwable;
+        if (throwable instanceof Error)
+            throw (Error) throwable;
+    }
+
+    private void signal(int count) {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        for (int started = 0; started < count; ) {
+            final int running = helpers.get();
+            if (running >= parallelism)
+                return;
+            if (! helpers.compareAndSet(running, running + 1))
+                continue;
+            try {
+                executor.execute(helper);
+            } catch (RejectedExecutionException e) {
+                // the calling thread picks up the work instead
+                helpers.decrementAndGet();
+                return;
+            }
+            started++;
+        }
+    }
+
+    private void execute(T item) {
+        try {
+            if (failure.get() == null)
+                process(item);
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        } finally {
+            if (pending.decrementAndGet() == 0) {
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A condition on the names of virtual files which a file system can evaluate itself while it searches a directory
+ * tree, as used by {@link org.jboss.vfs.spi.QueryableFileSystem}.  Queries are built from the static factory methods
+ * and may be combined freely.  Instances are immutable and thread-safe.
+ */
+public abstract class EntryQuery {
+
+    /**
+     * A query which matches every name.
+     */
+    public static final EntryQuery ALL = new All();
+
+    EntryQuery() {
+    }
+
+    /**
+     * Determine whether a name matches this query.
+     *
+     * @param name the simple name of the file
+     *
+     * @return {@code true} if the name matches
+     */
+    public abstract boolean matches(String name);
+
+    /**
+     * Get the name suffixes of which every matching name ends with at least one, so that a file system with an index
+     * by suffix can narrow down the candidates before calling {@link #matches(String)} on them.
+     *
+     * @return the suffixes, or {@code null} if any name may match
+     */
+    public Set<String> getNameSuffixes() {
+        return null;
+    }
+
+    /**
+     * Get a filter which accepts the files whose names match this query.
+     *
+     * @return the filter
+     */
+    public VirtualFileFilterWithQuery asFilter() {
+        return new QueryFilter(this);
+    }
+
+    /**
+     * Get a query matching names which end with the given suffix.
+     *
+     * @param suffix the suffix
+     *
+     * @return the query
+     *
+     * @throws IllegalArgumentException if the suffix is null
+     */
+    public static EntryQuery nameSuffix(String suffix) {
+        if (suffix == null)
+            throw new IllegalArgumentException("Null suffix");
+        return new NameSuffix(suffix);
+    }
+
+    /**
+     * Get a query matching names which equal the given name.
+     *
+     * @param name the name
+     *
+     * @return the query
+     *
+     * @throws IllegalArgumentException if the name is null
+     */
+    public static EntryQuery nameEquals(String name) {
+        if (name == null)
+            throw new IllegalArgumentException("Null name");
+        return new NameEquals(name);
+    }
+
+    /**
+     * Get a query matching names which match the given regular expression in full.
+     *
+     * @param regexp the regular expression
+     *
+     * @return the query
+     *
+     * @throws IllegalArgumentException if the expression is null
+     */
+    public static EntryQuery nameMatches(String regexp) {
+        if (regexp == null)
+            throw new IllegalArgumentException("Null regexp");
+        return new NameMatches(Pattern.compile(regexp));
+    }
+
+    /**
+     * Get a query matching names against a simple glob, in which {@code '*'} stands for any number of characters and
+     * {@code '?'} for any single character.  A glob of the form {@code *suffix} is answered like {@link
+     * #nameSuffix(String)}.
+     *
+     * @param glob the glob
+     *
+     * @return the query
+     *
+     * @throws IllegalArgumentException if the glob is null
+     */
+    public static EntryQuery nameGlob(String glob) {
+        if (glob == null)
+            throw new IllegalArgumentException("Null glob");
+        final String rest = glob.startsWith("*") ? glob.substring(1) : null;
+        if (rest != null && rest.indexOf('*') == -1 && rest.indexOf('?') == -1)
+            return new NameSuffix(rest);
+        if (glob.indexOf('*') == -1 && glob.indexOf('?') == -1)
+            return new NameEquals(glob);
+        final StringBuilder regexp = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start)
+                    regexp.append(Pattern.quote(glob.substring(start, i)));
+                regexp.append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < glob.length())
+            regexp.append(Pattern.quote(glob.substring(start)));
+        // keep the literal tail of the glob, if any, as a suffix hint
+        return new NameMatches(Pattern.compile(regexp.toString(), Pattern.DOTALL), glob.substring(start));
+    }
+
+    /**
+     * Get a query matching names which match all of the given queries.
+     *
+     * @param queries the queries
+     *
+     * @return the query
+     *
+     * @throws IllegalArgumentException if the queries are null or contain null
+     */
+    public static EntryQuery and(EntryQuery... queries) {
+        return new And(check(queries));
+    }
+
+    /**
+     * Get a query matching names which match any of the given queries.
+     *
+     * @param queries the queries
+     *
+     * @return the query
+     *
+     * @throws IllegalArgumentException if the queries are null or contain null
+     */
+    public static EntryQuery or(EntryQuery... queries) {
+        return new Or(check(queries));
+    }
+
+    /**
+     * Get a query matching the names which do not match the given query.
+     *
+     * @param query the query
+     *
+     * @return the query
+     *
+     * @throws IllegalArgumentException if the query is null
+     */
+    public static EntryQuery not(EntryQuery query) {
+        if (query == null)
+            throw new IllegalArgumentException("Null query");
+        return new Not(query);
+    }
+
+    private static EntryQuery[] check(EntryQuery[] queries) {
+        if (queries == null)
+            throw new IllegalArgumentException("Null queries");
+        for (EntryQuery query : queries) {
+            if (query == null)
+                throw new IllegalArgumentException("Null query");
+        }
+        return queries.clone();
+    }
+
+    private static final class QueryFilter implements VirtualFileFilterWithQuery {
+        private final EntryQuery query;
+
+        QueryFilter(EntryQuery query) {
+            this.query = query;
+        }
+
+        public boolean accepts(VirtualFile file) {
+            return query.matches(file.getName());
+        }
+
+        public EntryQuery getQuery() {
+            return query;
+        }
+
+        public String toString() {
+            return query.toString();
+        }
+    }
+
+    private static final class All extends EntryQuery {
+
+        public boolean matches(String name) {
+            return true;
+        }
+
+        public String toString() {
+            return "all";
+        }
+    }
+
+    private static final class NameSuffix extends EntryQuery {
+        private final String suffix;
+
+        NameSuffix(String suffix) {
+            this.suffix = suffix;
+        }
+
+        public boolean matches(String name) {
+            return name.endsWith(suffix);
+        }
+
+        public Set<String> getNameSuffixes() {
+            return Collections.singleton(suffix);
+        }
+
+        public String toString() {
+            return "name ends with " + suffix;
+        }
+    }
+
+    private static final class NameEquals extends EntryQuery {
+        private final String name;
+
+        NameEquals(String name) {
+            this.name = name;
+        }
+
+        public boolean matches(String name) {
+            return this.name.equals(name);
+        }
+
+        public Set<String> getNameSuffixes() {
+            return Collections.singleton(name);
+        }
+
+        public String toString() {
+            return "name is " + name;
+        }
+    }
+
+    private static final class NameMatches extends EntryQuery {
+        private final Pattern pattern;
+        private final String suffix;
+
+        NameMatches(Pattern pattern) {
+            this(pattern, "");
+        }
+
+        NameMatches(Pattern pattern, String suffix) {
+            this.pattern = pattern;
+            this.suffix = suffix;
+        }
+
+        public boolean matches(String name) {
+            return pattern.matcher(name).matches();
+        }
+
+        public Set<String> getNameSuffixes() {
+            return suffix.length() == 0 ? null : Collections.singleton(suffix);
+        }
+
+        public String toString() {
+            return "name matches " + pattern;
+        }
+    }
+
+    private static final class And extends EntryQuery {
+        private final EntryQuery[] queries;
+
+        And(EntryQuery[] queries) {
+            this.queries = queries;
+        }
+
+        public boolean matches(String name) {
+            for (EntryQuery query : queries) {
+                if (! query.matches(name))
+                    return false;
+            }
+            return true;
+        }
+
+        public Set<String> getNameSuffixes() {
+            // any one of the constrained operands will do; prefer the narrowest
+            Set<String> best = null;
+            for (EntryQuery query : queries) {
+                final Set<String> suffixes = query.getNameSuffixes();
+                if (suffixes != null && (best == null || suffixes.size() < best.size()))
+                    best = suffixes;
+            }
+            return best;
+        }
+
+        public String toString() {
+            return join(" and ", queries);
+        }
+    }
+
+    private static final class Or extends EntryQuery {
+        private final EntryQuery[] queries;
+
+        Or(EntryQuery[] queries) {
+            this.queries = queries;
+        }
+
+        public boolean matches(String name) {
+            for (EntryQuery query : queries) {
+                if (query.matches(name))
+                    return true;
+            }
+            return false;
+        }
+
+        public Set<String> getNameSuffixes() {
+            final Set<String> all = new LinkedHashSet<String>();
+            for (EntryQuery query : queries) {
+                final Set<String> suffixes = query.getNameSuffixes();
+                if (suffixes == null)
+                    return null;
+                all.addAll(suffixes);
+            }
+            return all;
+        }
+
+        public String toString() {
+            return queries.length == 0 ? "none" : join(" or ", queries);
+        }
+    }
+
+    private static final class Not extends EntryQuery {
+        private final EntryQuery query;
+
+        Not(EntryQuery query) {
+            this.query = query;
+        }
+
+        public boolean matches(String name) {
+            return ! query.matches(name);
+        }
+
+        public String toString() {
+            return "not " + query;
+        }
+    }
+
+    private static String join(String separator, EntryQuery[] queries) {
+        final StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < queries.length; i++) {
+            if (i > 0)
+                builder.append(separator);
+            builder.append(queries[i]);
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.vfs.spi.AttributedFileSystem;
+import org.jboss.vfs.spi.FileSystem;
+
+/**
+ * The basic attributes of a virtual file, as returned by {@link VirtualFile#getAttributes()}.  Reading the attributes
+ * resolves the mount of the file only once, and lets the file system answer all the questions from a single lookup
+ * where it can.
+ */
+public class FileAttributes {
+
+    /**
+     * The attributes of a file which does not exist.
+     */
+    public static final FileAttributes NONEXISTENT = new FileAttributes(false, false, false, 0L, 0L);
+
+    private final boolean exists;
+    private final boolean file;
+    private final boolean directory;
+    private final long size;
+    private final long lastModified;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param exists {@code true} if the file exists
+     * @param file {@code true} if the file is a plain file
+     * @param directory {@code true} if the file is a directory
+     * @param size the size, in bytes
+     * @param lastModified the modification time in milliseconds
+     */
+    public FileAttributes(boolean exists, boolean file, boolean directory, long size, long lastModified) {
+        this.exists = exists;
+        this.file = file;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Get the attributes of a real file.  The type of the file is determined immediately; the size and modification
+     * time are only read from the file when first asked for.  A plain file which is checked for existence, type, size
+     * and modification time thus costs three file system calls rather than five.
+     *
+     * @param file the file
+     * @return the attributes
+     */
+    public static FileAttributes of(File file) {
+        if (file.isFile()) {
+            return new RealFileAttributes(file, true, false);
+        } else if (file.isDirectory()) {
+            return new RealFileAttributes(file, false, true);
+        } else if (file.exists()) {
+            return new RealFileAttributes(file, false, false);
+        } else {
+            return NONEXISTENT;
+        }
+    }
+
+    /**
+     * Get the attributes of a virtual file by asking each of the individual questions of the file system.  This is the
+     * fallback for file systems which cannot do any better.
+     *
+     * @param fileSystem the file system
+     * @param mountPoint the mount point of the filesystem instance
+     * @param target the virtual file
+     * @return the attributes
+     */
+    public static FileAttributes of(FileSystem fileSystem, VirtualFile mountPoint, VirtualFile target) {
+        if (! fileSystem.exists(mountPoint, target)) {
+            return NONEXISTENT;
+        }
+        final boolean file = fileSystem.isFile(mountPoint, target);
+        final boolean directory = ! file && fileSystem.isDirectory(mountPoint, target);
+        return new FileAttributes(true, file, directory, fileSystem.getSize(mountPoint, target), fileSystem.getLastModified(mountPoint, target));
+    }
+
+    /**
+     * Read a real directory together with the attributes of its entries.  Each entry costs one file system call for its
+     * type (two for directories); sizes and modification times are read lazily as in {@link #of(File)}.
+     *
+     * @param directory the directory
+     * @return the attributes of the directory entries by name, in directory order; empty if the file is not a
+     *         directory
+     */
+    public static Map<String, FileAttributes> ofEntries(File directory) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, FileAttributes> entries = new LinkedHashMap<String, FileAttributes>(files.length * 4 / 3 + 1);
+        for (File file : files) {
+            entries.put(file.getName(), of(file));
+        }
+        return entries;
+    }
+
+    /**
+     * Read a directory together with the attributes of its entries by asking the file system for each entry in turn.
+     * This is the fallback for file systems which cannot do any better.
+     *
+     * @param fileSystem the file system
+     * @param mountPoint the mount point of the filesystem instance
+     * @param target the directory
+     * @return the attributes of the directory entries by name, in directory order
+     */
+    public static Map<String, FileAttributes> ofEntries(FileSystem fileSystem, VirtualFile mountPoint, VirtualFile target) {
+        final List<String> names = fileSystem.getDirectoryEntries(mountPoint, target);
+        if (names.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, FileAttributes> entries = new LinkedHashMap<String, FileAttributes>(names.size() * 4 / 3 + 1);
+        final AttributedFileSystem attributedFileSystem = fileSystem instanceof AttributedFileSystem ? (AttributedFileSystem) fileSystem : null;
+        for (String name : names) {
+            final VirtualFile child = target.getChild(name);
+            entries.put(name, attributedFileSystem != null ? attributedFileSystem.getAttributes(mountPoint, child) : of(fileSystem, mountPoint, child));
+        }
+        return entries;
+    }
+
+    /**
+     * Determine whether the file existed when the attributes were read.
+     *
+     * @return {@code true} if the file exists
+     */
+    public boolean exists() {
+        return exists;
+    }
+
+    /**
+     * Determine whether the file is a plain file.
+     *
+     * @return {@code true} if it is a plain file, {@code false} otherwise
+     */
+    public boolean isFile() {
+        return file;
+    }
+
+    /**
+     * Determine whether the file is a directory.
+     *
+     * @return {@code true} if it is a directory, {@code false} otherwise
+     */
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the size.
+     *
+     * @return the size, in bytes, or 0L if the file does not exist
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the last modification time.
+     *
+     * @return the modification time in milliseconds, or 0L if the file does not exist
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get a human-readable representation of these attributes.
+     *
+     * @return the string
+     */
+    public String toString() {
+        if (! exists()) {
+            return "nonexistent";
+        }
+        return (isFile() ? "file" : isDirectory() ? "directory" : "other") + ", size " + getSize() + ", last modified " + getLastModified();
+    }
+
+    private static final class RealFileAttributes extends FileAttributes {
+        private final File realFile;
+        private volatile long size = -1L;
+        private volatile long lastModified = -1L;
+
+        RealFileAttributes(File realFile, boolean file, boolean directory) {
+            super(true, file, directory, 0L, 0L);
+            this.realFile = realFile;
+        }
+
+        public long getSize() {
+            long size = this.size;
+            if (size == -1L) {
+                this.size = size = realFile.length();
+            }
+            return size;
+        }
+
+        public long getLastModified() {
+            long lastModified = this.lastModified;
+            if (lastModified == -1L) {
+                this.lastModified = lastModified = realFile.lastModified();
+            }
+            return lastModified;
+        }
+    }
+}
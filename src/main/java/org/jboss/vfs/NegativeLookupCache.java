@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers virtual files which were found not to exist on an {@link org.jboss.vfs.spi.ImmutableFileSystem}, so that
+ * repeated probes for them skip both the mount lookup and the file system.  An entry only counts if it was recorded
+ * in the current generation, which combines the {@linkplain VFS#getMountGeneration() mount table generation} with the
+ * number of explicit invalidations; this covers lookups racing with a mount, an unmount or an invalidation.  When the
+ * cache is full it is simply emptied.
+ */
+final class NegativeLookupCache {
+
+    private final int maxSize;
+    private final ConcurrentMap<VirtualFile, Long> missing = new ConcurrentHashMap<VirtualFile, Long>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger invalidations = new AtomicInteger();
+
+    NegativeLookupCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the current generation.  This must be read before the mount of a file is looked up.
+     *
+     * @return the generation
+     */
+    long getGeneration() {
+        return (long) invalidations.get() << 32 | VFS.getMountGeneration() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Determine whether the given file is known not to exist.
+     *
+     * @param file the file
+     * @param generation the generation read before the lookup
+     * @return {@code true} if the file is known not to exist
+     */
+    boolean isMissing(VirtualFile file, long generation) {
+        if (maxSize == 0) {
+            return false;
+        }
+        final Long recorded = missing.get(file);
+        return recorded != null && recorded.longValue() == generation;
+    }
+
+    /**
+     * Record that the given file does not exist.
+     *
+     * @param file the file
+     * @param generation the generation read before the mount of the file was looked up
+     */
+    void addMissing(VirtualFile file, long generation) {
+        if (maxSize == 0) {
+            return;
+        }
+        if (size.get() >= maxSize) {
+            clear();
+        }
+        if (missing.put(file, Long.valueOf(generation)) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Forget all recorded files, including those being recorded by lookups in progress.
+     */
+    void invalidate() {
+        invalidations.incrementAndGet();
+        clear();
+    }
+
+    /**
+     * Drop all recorded files.  Unlike {@link #invalidate()} this does not start a new generation, so it is only for
+     * making room once the generation has moved on.
+     */
+    void clear() {
+        missing.clear();
+        size.set(0);
+    }
+}
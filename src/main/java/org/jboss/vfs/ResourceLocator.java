@@ -0,0 +1,189 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.vfs.spi.FileSystem;
+import org.jboss.vfs.spi.IndexedFileSystem;
+import org.jboss.vfs.util.BloomFilter;
+
+/**
+ * Looks up resources across an ordered list of roots, for class path style lookups.  Unlike {@link
+ * org.jboss.vfs.util.ResourceIndex} this is not a snapshot: every lookup reflects the current contents of the roots.
+ * Roots which are backed by an {@link IndexedFileSystem}, such as mounted archives, are ruled out by the entry filter
+ * of the file system first, so that a resource which is present in only one of many archives costs a hash or two per
+ * other archive instead of a lookup in each.
+ * <p/>
+ * A root is only filtered while nothing is mounted below it; the filters are picked up again after every change to the
+ * mounts.  Paths are relative to the roots and use {@code '/'} as separator.  Instances are thread-safe.
+ */
+public class ResourceLocator {
+
+    private final VirtualFile[] roots;
+    private final AtomicReferenceArray<RootState> states;
+
+    /**
+     * Create a new instance.
+     *
+     * @param roots the roots, in lookup order
+     *
+     * @throws IllegalArgumentException if the list of roots is null or contains null
+     */
+    public ResourceLocator(List<VirtualFile> roots) {
+        if (roots == null)
+            throw new IllegalArgumentException("Null roots");
+        this.roots = roots.toArray(new VirtualFile[roots.size()]);
+        for (VirtualFile root : this.roots) {
+            if (root == null)
+                throw new IllegalArgumentException("Null root");
+        }
+        states = new AtomicReferenceArray<RootState>(this.roots.length);
+    }
+
+    /**
+     * Get the roots of this locator.
+     *
+     * @return the roots, in lookup order
+     */
+    public List<VirtualFile> getRoots() {
+        final List<VirtualFile> list = new ArrayList<VirtualFile>(roots.length);
+        Collections.addAll(list, roots);
+        return list;
+    }
+
+    /**
+     * Get the resource from the first root which contains it.
+     *
+     * @param path the resource path
+     *
+     * @return the resource, or {@code null} if no root contains it
+     */
+    public VirtualFile getResource(String path) {
+        if (path == null)
+            throw new IllegalArgumentException("Null path");
+        final String lowerCasePath = filterablePath(path);
+        for (int i = 0; i < roots.length; i++) {
+            final VirtualFile resource = find(i, path, lowerCasePath);
+            if (resource != null)
+                return resource;
+        }
+        return null;
+    }
+
+    /**
+     * Get the resource from every root which contains it.
+     *
+     * @param path the resource path
+     *
+     * @return the resources, in root order; empty if no root contains it
+     */
+    public List<VirtualFile> getResources(String path) {
+        if (path == null)
+            throw new IllegalArgumentException("Null path");
+        final String lowerCasePath = filterablePath(path);
+        List<VirtualFile> resources = Collections.emptyList();
+        for (int i = 0; i < roots.length; i++) {
+            final VirtualFile resource = find(i, path, lowerCasePath);
+            if (resource != null) {
+                if (resources.isEmpty())
+                    resources = new ArrayList<VirtualFile>(2);
+                resources.add(resource);
+            }
+        }
+        return resources;
+    }
+
+    private VirtualFile find(int i, String path, String lowerCasePath) {
+        if (lowerCasePath != null) {
+            final RootState state = getState(i);
+            if (state.filter != null && ! state.filter.mightContain(state.prefix, lowerCasePath)) {
+                return null;
+            }
+        }
+        final VirtualFile resource = roots[i].getChild(path);
+        return resource.exists() ? resource : null;
+    }
+
+    private RootState getState(int i) {
+        final int generation = VFS.getMountGeneration();
+        RootState state = states.get(i);
+        if (state == null || state.generation != generation) {
+            states.set(i, state = createState(roots[i], generation));
+        }
+        return state;
+    }
+
+    private static RootState createState(VirtualFile root, int generation) {
+        final VFS.Mount mount = VFS.getMount(root);
+        final FileSystem fileSystem = mount.getFileSystem();
+        if (! (fileSystem instanceof IndexedFileSystem) || VFS.hasSubmounts(root)) {
+            return new RootState(generation, null, null);
+        }
+        final BloomFilter filter = ((IndexedFileSystem) fileSystem).getEntryFilter();
+        final VirtualFile mountPoint = mount.getMountPoint();
+        final String prefix = root.equals(mountPoint) ? "" : root.getPathNameRelativeTo(mountPoint).toLowerCase() + "/";
+        return new RootState(generation, filter, prefix);
+    }
+
+    /**
+     * Get the path in the form the entry filters hold it.
+     *
+     * @return the lower case path, or {@code null} if the path is empty or is not a plain relative path and so cannot
+     *         be filtered
+     */
+    private static String filterablePath(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/')
+            start++;
+        while (end > start && path.charAt(end - 1) == '/')
+            end--;
+        if (start == end)
+            return null;
+        int segment = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || path.charAt(i) == '/') {
+                final int length = i - segment;
+                if (length == 0 || length == 1 && path.charAt(segment) == '.' || length == 2 && path.charAt(segment) == '.' && path.charAt(segment + 1) == '.')
+                    return null;
+                segment = i + 1;
+            }
+        }
+        return path.substring(start, end).toLowerCase();
+    }
+
+    private static final class RootState {
+        private final int generation;
+        private final BloomFilter filter;
+        private final String prefix;
+
+        RootState(int generation, BloomFilter filter, String prefix) {
+            this.generation = generation;
+            this.filter = filter;
+            this.prefix = prefix;
+        }
+    }
+}
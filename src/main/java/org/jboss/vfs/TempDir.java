@@ -109,13 +109,15 @@ public final class TempDir implements Closeable {
     }
 
     /**
-     * Close this directory.  The contents of the directory will be removed.
+     * Close this directory.  The contents of the directory will be removed; if the provider deletes in the background
+     * (see {@link TempFileProvider#create(String, java.util.concurrent.ScheduledExecutorService, boolean)}), the
+     * directory is gone when this method returns, but its contents are removed later.
      *
      * @throws IOException if an I/O error occurs
      */
     public void close() throws IOException {
         if (open.getAndSet(false)) {
-            provider.new DeleteTask(root).run();
+            provider.delete(root, root.getParentFile());
         }
     }
 
@@ -26,9 +26,12 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jboss.logging.Logger;
 
@@ -45,6 +48,7 @@ public final class TempFileProvider implements Closeable {
     private static final String JVM_TMP_DIR_PROPERTY = "java.io.tmpdir";
     private static final File TMP_ROOT;
     private static final int RETRIES = 10;
+    private static final String TOMBSTONE_PREFIX = ".deleted-";
     private final AtomicBoolean open = new AtomicBoolean(true);
 
     static {
@@ -70,15 +74,37 @@ public final class TempFileProvider implements Closeable {
      * @throws IOException if an I/O error occurs
      */
     public static TempFileProvider create(String providerType, ScheduledExecutorService executor) throws IOException {
-        return new TempFileProvider(createTempDir(providerType, "", TMP_ROOT), executor);
+        return create(providerType, executor, false);
+    }
+
+    /**
+     * Create a temporary file provider for a given type, which may delete temp directories in the background.  A temp
+     * directory which is deleted in the background is first renamed to a tombstone, so that its name is free at once,
+     * and then deleted by several tasks on the executor at once.  Closing such a provider deletes its own directory
+     * the same way.
+     *
+     * @param providerType the provider type string (used as a prefix in the temp file dir name)
+     * @param executor the executor
+     * @param deleteInBackground {@code true} to delete temp directories in the background, {@code false} to delete
+     * them on the closing thread
+     * @return the new provider
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public static TempFileProvider create(String providerType, ScheduledExecutorService executor, boolean deleteInBackground) throws IOException {
+        return new TempFileProvider(createTempDir(providerType, "", TMP_ROOT), executor, deleteInBackground);
     }
 
     private final File providerRoot;
     private final ScheduledExecutorService executor;
+    private final boolean deleteInBackground;
+    private final AtomicInteger pendingDeletes = new AtomicInteger();
+    private final AtomicLong deletedFiles = new AtomicLong();
 
-    private TempFileProvider(File providerRoot, ScheduledExecutorService executor) {
+    private TempFileProvider(File providerRoot, ScheduledExecutorService executor, boolean deleteInBackground) {
         this.providerRoot = providerRoot;
         this.executor = executor;
+        this.deleteInBackground = deleteInBackground;
     }
 
     /**
@@ -129,7 +155,50 @@ public final class TempFileProvider implements Closeable {
      */
     public void close() throws IOException {
         if (open.getAndSet(false)) {
-            new DeleteTask(providerRoot).run();
+            delete(providerRoot, TMP_ROOT);
+        }
+    }
+
+    /**
+     * Get the number of trees waiting to be deleted in the background, or being deleted.
+     *
+     * @return the number of trees
+     */
+    public int getPendingDeleteCount() {
+        return pendingDeletes.get();
+    }
+
+    /**
+     * Get the number of files and directories deleted in the background so far.
+     *
+     * @return the number of files and directories
+     */
+    public long getDeletedFileCount() {
+        return deletedFiles.get();
+    }
+
+    /**
+     * Delete a temp directory, either at once or in the background.
+     *
+     * @param root the directory
+     * @param tombstoneDir the directory to move the tree to before deleting it in the background
+     */
+    void delete(File root, File tombstoneDir) {
+        if (! deleteInBackground) {
+            new DeleteTask(root).run();
+            return;
+        }
+        File tree = new File(tombstoneDir, createTempName(TOMBSTONE_PREFIX, ""));
+        if (! root.renameTo(tree)) {
+            log.tracef("Failed to rename %s to %s, deleting it in place", root, tree);
+            tree = root;
+        }
+        pendingDeletes.incrementAndGet();
+        final BackgroundDeleteTask task = new BackgroundDeleteTask(tree);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
         }
     }
 
@@ -152,4 +221,27 @@ public final class TempFileProvider implements Closeable {
             }
         }
     }
+
+    class BackgroundDeleteTask implements Runnable {
+
+        private final File root;
+
+        public BackgroundDeleteTask(File root) {
+            this.root = root;
+        }
+
+        public void run() {
+            if (new ConcurrentDelete(executor, ConcurrentWork.IO_PARALLELISM, deletedFiles).run(root)) {
+                pendingDeletes.decrementAndGet();
+                return;
+            }
+            log.tracef("Failed to delete root (%s), retrying in 30sec.", root);
+            try {
+                executor.schedule(this, 30L, TimeUnit.SECONDS);
+            } catch (RejectedExecutionException e) {
+                // nothing left to retry on
+                pendingDeletes.decrementAndGet();
+            }
+        }
+    }
 }
@@ -21,6 +21,7 @@
 */
 package org.jboss.vfs;
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -34,11 +35,15 @@ import java.security.PrivilegedAction;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipException;
 
 import org.jboss.logging.Logger;
 import org.jboss.net.protocol.URLStreamHandlerFactory;
 import org.jboss.vfs.spi.AssemblyFileSystem;
+import org.jboss.vfs.spi.CachingRealFileSystem;
 import org.jboss.vfs.spi.FileSystem;
 import org.jboss.vfs.spi.JavaZipFileSystem;
 import org.jboss.vfs.spi.MountHandle;
@@ -60,8 +65,25 @@ public class VFS {
 
     public static final boolean LEAK_DEBUGGING;
     public static final boolean FORCE_CANONICAL;
+    public static final boolean CACHE_VIRTUAL_FILES;
+
+    static final long MAP_THRESHOLD = AccessController.doPrivileged(new PrivilegedAction<Long>() {
+        public Long run() {
+            return Long.getLong("jboss.vfs.mapThreshold", 256L * 1024L);
+        }
+    }).longValue();
 
     private static final ConcurrentMap<VirtualFile, Map<String, Mount>> mounts = new ConcurrentHashMap<VirtualFile, Map<String, Mount>>();
+    /** Incremented after every change to {@link #mounts} */
+    private static final AtomicInteger mountGeneration = new AtomicInteger();
+    /** The paths with a mount anywhere below them, built lazily for the current mount generation */
+    private static volatile MountIndex mountIndex;
+    static final NegativeLookupCache negativeLookups = new NegativeLookupCache(AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+        public Integer run() {
+            return Integer.getInteger("jboss.vfs.negativeLookupCacheSize", 8192);
+        }
+    }).intValue());
+    private static final ConcurrentMap<String, VirtualFile> windowsRoots = new ConcurrentHashMap<String, VirtualFile>();
     private static final VirtualFile rootVirtualFile = createDefaultRoot();
 
     private static VirtualFile createDefaultRoot() {
@@ -86,8 +108,16 @@ public class VFS {
             }
         });
 
+        CACHE_VIRTUAL_FILES = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            public Boolean run() {
+                return Boolean.getBoolean("jboss.vfs.cacheVirtualFiles");
+            }
+        });
+
         if (FORCE_CANONICAL)
            log.info("Canonical path lookup enabled.");
+        if (CACHE_VIRTUAL_FILES)
+           log.info("Canonical virtual file instances enabled.");
     }
 
     /**
@@ -144,6 +174,7 @@ public class VFS {
             if (childMountMap == null) {
                 childMountMap = mounts.putIfAbsent(parent, Collections.singletonMap(name, mount));
                 if (childMountMap == null) {
+                    mountsChanged();
                     return mount;
                 }
             }
@@ -152,6 +183,7 @@ public class VFS {
                 throw new IOException("Filsystem already mounted at mount point \"" + mountPoint + "\"");
             }
             if (mounts.replace(parent, childMountMap, newMap)) {
+                mountsChanged();
                 log.tracef("Mounted filesystem %s on mount point %s", fileSystem, mountPoint);
                 return mount;
             }
@@ -216,7 +248,7 @@ public class VFS {
             if (absolute.length() > 2) {
                 if (absolute.charAt(1) == ':') {
                     // Drive form
-                    root = new VirtualFile("/" + absolute.charAt(0) + ":/", null);
+                    root = getWindowsRoot("/" + absolute.charAt(0) + ":/");
                     path = absolute.substring(2).replace('\\', '/');
                 } else if (absolute.charAt(0) == '\\' && absolute.charAt(1) == '\\') {
                     // UNC form 
@@ -226,7 +258,7 @@ public class VFS {
                             // Note, it turns out that File.toURL puts this portion
                             // in the path portion of the URL, which is actually not
                             // correct, since // is supposed to signify the authority.
-                            root = new VirtualFile("//" + absolute.substring(0,i), null);
+                            root = getWindowsRoot("//" + absolute.substring(0,i));
                             path = absolute.substring(i).replace('\\', '/');
                             break;
                         }
@@ -243,6 +275,42 @@ public class VFS {
         return root.getChild(path);
     }
 
+    /**
+     * Get the canonical instance of a root virtual file with the given name.
+     *
+     * @param name the root name
+     * @return the root virtual file
+     */
+    static VirtualFile getCanonicalRoot(String name) {
+        final VirtualFile rootVirtualFile = VFS.rootVirtualFile;
+        return rootVirtualFile.getName().equals(name) ? rootVirtualFile : getWindowsRoot(name);
+    }
+
+    private static VirtualFile getWindowsRoot(String name) {
+        if (! CACHE_VIRTUAL_FILES) {
+            return new VirtualFile(name, null);
+        }
+        VirtualFile root = windowsRoots.get(name);
+        if (root == null) {
+            final VirtualFile newRoot = new VirtualFile(name, null);
+            root = windowsRoots.putIfAbsent(name, newRoot);
+            if (root == null) {
+                root = newRoot;
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Forget all files remembered as missing from immutable file systems.  This happens automatically whenever a file
+     * system is mounted or unmounted; call it if the contents of a file system declared as {@link
+     * org.jboss.vfs.spi.ImmutableFileSystem} have changed nonetheless.  The size of the cache is set with the {@code
+     * jboss.vfs.negativeLookupCacheSize} system property; 0 disables it.
+     */
+    public static void invalidateNegativeLookups() {
+        negativeLookups.invalidate();
+    }
+
     /**
      * Get the root virtual file for this VFS instance.
      *
@@ -352,6 +420,22 @@ public class VFS {
         }
     }
 
+    /**
+     * Determine whether something is mounted directly on a path.
+     *
+     * @param virtualFile the path
+     *
+     * @return {@code true} if the path is a mount point
+     */
+    static boolean isMountPoint(VirtualFile virtualFile) {
+        final VirtualFile parent = virtualFile.getParent();
+        if (parent == null) {
+            return false;
+        }
+        final Map<String, Mount> parentMounts = mounts.get(parent);
+        return parentMounts != null && parentMounts.containsKey(virtualFile.getName());
+    }
+
     /**
      * Get all immediate submounts for a path.
      *
@@ -368,6 +452,64 @@ public class VFS {
         return new HashSet<String>(mountMap.keySet());
     }
 
+    /**
+     * Determine whether anything is mounted anywhere below a path.  The mount points are indexed once per generation of
+     * the mount table, so asking this for many paths after a mount does not scan the mount table each time.
+     *
+     * @param virtualFile the path
+     *
+     * @return {@code true} if there is a mount below the path
+     */
+    static boolean hasSubmounts(VirtualFile virtualFile) {
+        final int generation = mountGeneration.get();
+        MountIndex index = mountIndex;
+        if (index == null || index.generation != generation) {
+            mountIndex = index = new MountIndex(generation, mounts.keySet());
+        }
+        return index.parents.contains(virtualFile);
+    }
+
+    /**
+     * Get the generation of the mount table, which changes after every mount and unmount.  Read it before looking up
+     * mounts, so that a change racing with the lookup shows up as a new generation.
+     *
+     * @return the generation
+     */
+    static int getMountGeneration() {
+        return mountGeneration.get();
+    }
+
+    private static void mountsChanged() {
+        mountGeneration.incrementAndGet();
+        // files recorded as missing in older generations no longer count; drop them to make room
+        negativeLookups.clear();
+    }
+
+    /**
+     * Get the mount points anywhere below a path.
+     *
+     * @param virtualFile the path
+     *
+     * @return the mount points, in no particular order
+     */
+    static List<VirtualFile> getMountPointsBelow(VirtualFile virtualFile) {
+        List<VirtualFile> mountPoints = Collections.emptyList();
+        for (Map.Entry<VirtualFile, Map<String, Mount>> entry : mounts.entrySet()) {
+            for (VirtualFile file = entry.getKey(); file != null; file = file.getParent()) {
+                if (file.equals(virtualFile)) {
+                    if (mountPoints.isEmpty()) {
+                        mountPoints = new ArrayList<VirtualFile>();
+                    }
+                    for (Mount mount : entry.getValue().values()) {
+                        mountPoints.add(mount.getMountPoint());
+                    }
+                    break;
+                }
+            }
+        }
+        return mountPoints;
+    }
+
     private static MountHandle doMount(final FileSystem fileSystem, final VirtualFile mountPoint, Closeable... additionalCloseables) throws IOException {
         boolean ok = false;
         try {
@@ -469,6 +611,22 @@ public class VFS {
         return doMount(new RealFileSystem(realRoot), mountPoint);
     }
 
+    /**
+     * Create and mount a real file system which caches file attributes and directory listings, returning a single
+     * handle which will unmount and close the filesystem when closed.  Changes made to the real files by other means
+     * are noticed after a short delay; see {@link CachingRealFileSystem}.
+     *
+     * @param realRoot the real filesystem root
+     * @param mountPoint the point at which the filesystem should be mounted
+     *
+     * @return a handle
+     *
+     * @throws IOException if an error occurs
+     */
+    public static Closeable mountCachedReal(File realRoot, VirtualFile mountPoint) throws IOException {
+        return doMount(new CachingRealFileSystem(realRoot), mountPoint);
+    }
+
     /**
      * Create and mount a temporary file system, returning a single handle which will unmount and close the filesystem
      * when closed.
@@ -507,11 +665,33 @@ public class VFS {
      * @throws IOException if an error occurs
      */
     public static Closeable mountZipExpanded(File zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider) throws IOException {
+        return doMountZipExpanded(zipFile, mountPoint, tempFileProvider, null);
+    }
+
+    /**
+     * Create and mount an expanded zip file in a temporary file system, returning a single handle which will unmount and
+     * close the filesystem when closed.  The archive is expanded in parallel on the given executor, as by
+     * {@link VFSUtils#unzip(File, File, Executor)}.
+     *
+     * @param zipFile the zip file to mount
+     * @param mountPoint the point at which the filesystem should be mounted
+     * @param tempFileProvider the temporary file provider
+     * @param executor the executor to expand the archive on
+     *
+     * @return a handle
+     *
+     * @throws IOException if an error occurs
+     */
+    public static Closeable mountZipExpanded(File zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider, Executor executor) throws IOException {
+        return doMountZipExpanded(zipFile, mountPoint, tempFileProvider, checkExecutor(executor));
+    }
+
+    private static Closeable doMountZipExpanded(File zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider, Executor executor) throws IOException {
         boolean ok = false;
         final TempDir tempDir = tempFileProvider.createTempDir(zipFile.getName());
         try {
             final File rootFile = tempDir.getRoot();
-            VFSUtils.unzip(zipFile, rootFile);
+            unzip(zipFile, rootFile, executor);
             final MountHandle handle = doMount(new RealFileSystem(rootFile), mountPoint, tempDir);
             ok = true;
             return handle;
@@ -536,31 +716,38 @@ public class VFS {
      * @throws IOException if an error occurs
      */
     public static Closeable mountZipExpanded(InputStream zipData, String zipName, VirtualFile mountPoint, TempFileProvider tempFileProvider) throws IOException {
+        return doMountZipExpanded(zipData, zipName, mountPoint, tempFileProvider, null);
+    }
+
+    /**
+     * Create and mount an expanded zip file in a temporary file system, returning a single handle which will unmount and
+     * close the filesystem when closed.  The archive is expanded in parallel on the given executor, as by
+     * {@link VFSUtils#unzip(File, File, Executor)}.  The given zip data stream is closed.
+     *
+     * @param zipData an input stream containing the zip data
+     * @param zipName the name of the archive
+     * @param mountPoint the point at which the filesystem should be mounted
+     * @param tempFileProvider the temporary file provider
+     * @param executor the executor to expand the archive on
+     *
+     * @return a handle
+     *
+     * @throws IOException if an error occurs
+     */
+    public static Closeable mountZipExpanded(InputStream zipData, String zipName, VirtualFile mountPoint, TempFileProvider tempFileProvider, Executor executor) throws IOException {
+        return doMountZipExpanded(zipData, zipName, mountPoint, tempFileProvider, checkExecutor(executor));
+    }
+
+    private static Closeable doMountZipExpanded(InputStream zipData, String zipName, VirtualFile mountPoint, TempFileProvider tempFileProvider, Executor executor) throws IOException {
         try {
             boolean ok = false;
             final TempDir tempDir = tempFileProvider.createTempDir(zipName);
             try {
-                final File zipFile = File.createTempFile(zipName + "-", ".tmp", tempDir.getRoot());
-                try {
-                    final FileOutputStream os = new FileOutputStream(zipFile);
-                    try {
-                        // allow an error on close to terminate the unzip
-                        VFSUtils.copyStream(zipData, os);
-                        zipData.close();
-                        os.close();
-                    } finally {
-                        VFSUtils.safeClose(zipData);
-                        VFSUtils.safeClose(os);
-                    }
-                    final File rootFile = tempDir.getRoot();
-                    VFSUtils.unzip(zipFile, rootFile);
-                    final MountHandle handle = doMount(new RealFileSystem(rootFile), mountPoint, tempDir);
-                    ok = true;
-                    return handle;
-                } finally {
-                   //noinspection ResultOfMethodCallIgnored
-                   zipFile.delete();
-                }
+                final File rootFile = tempDir.getRoot();
+                unzipStaged(zipData, zipName, rootFile, executor);
+                final MountHandle handle = doMount(new RealFileSystem(rootFile), mountPoint, tempDir);
+                ok = true;
+                return handle;
             } finally {
                 if (!ok) {
                     VFSUtils.safeClose(tempDir);
@@ -571,9 +758,75 @@ public class VFS {
         }
     }
 
+    /**
+     * Store zip data in a temporary file and expand it from there, through its central directory.
+     */
+    private static void unzipStaged(InputStream zipData, String zipName, File rootFile, Executor executor) throws IOException {
+        final File zipFile = File.createTempFile(zipName + "-", ".tmp", rootFile);
+        try {
+            final FileOutputStream os = new FileOutputStream(zipFile);
+            try {
+                // allow an error on close to terminate the unzip
+                VFSUtils.copyStream(zipData, os);
+                zipData.close();
+                os.close();
+            } finally {
+                VFSUtils.safeClose(zipData);
+                VFSUtils.safeClose(os);
+            }
+            unzip(zipFile, rootFile, executor);
+        } finally {
+           //noinspection ResultOfMethodCallIgnored
+           zipFile.delete();
+        }
+    }
+
+    /**
+     * Expand zip data as it is read, without storing the archive first, and mount it.  The stream is not closed.
+     */
+    private static Closeable mountZipStreamed(InputStream zipData, String zipName, VirtualFile mountPoint, TempFileProvider tempFileProvider) throws IOException {
+        boolean ok = false;
+        final TempDir tempDir = tempFileProvider.createTempDir(zipName);
+        try {
+            final File rootFile = tempDir.getRoot();
+            VFSUtils.unzip(zipData, rootFile);
+            final MountHandle handle = doMount(new RealFileSystem(rootFile), mountPoint, tempDir);
+            ok = true;
+            return handle;
+        } finally {
+            if (!ok) {
+                VFSUtils.safeClose(tempDir);
+            }
+        }
+    }
+
+    /**
+     * Determine whether a stream starts with the local header of a zip entry, without consuming it.  Anything else, such
+     * as a self-extracting archive, has to be read through its central directory.
+     */
+    private static boolean startsWithLocalHeader(InputStream is) throws IOException {
+        final byte[] signature = new byte[4];
+        is.mark(signature.length);
+        try {
+            int n = 0;
+            while (n < signature.length) {
+                final int read = is.read(signature, n, signature.length - n);
+                if (read == -1) {
+                    return false;
+                }
+                n += read;
+            }
+            return signature[0] == 'P' && signature[1] == 'K' && signature[2] == 3 && signature[3] == 4;
+        } finally {
+            is.reset();
+        }
+    }
+
     /**
      * Create and mount an expanded zip file in a temporary file system, returning a single handle which will unmount and
-     * close the filesystem when closed.  The given zip data stream is closed.
+     * close the filesystem when closed.  An archive which starts with a zip entry is expanded as it is read, without
+     * being stored first.  If it cannot be read as a stream, such as one with a stored entry whose size follows its
+     * data, it is opened again and stored in a temporary file which is expanded through its central directory.
      *
      * @param zipFile a zip file in the VFS
      * @param mountPoint the point at which the filesystem should be mounted
@@ -584,7 +837,53 @@ public class VFS {
      * @throws IOException if an error occurs
      */
     public static Closeable mountZipExpanded(VirtualFile zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider) throws IOException {
-        return mountZipExpanded(zipFile.openStream(), zipFile.getName(), mountPoint, tempFileProvider);
+        final InputStream zipData = new BufferedInputStream(zipFile.openStream());
+        try {
+            if (! startsWithLocalHeader(zipData)) {
+                return doMountZipExpanded(zipData, zipFile.getName(), mountPoint, tempFileProvider, null);
+            }
+            try {
+                return mountZipStreamed(zipData, zipFile.getName(), mountPoint, tempFileProvider);
+            } catch (ZipException e) {
+                // such as a stored entry whose size follows its data, which only the central directory delimits
+                log.debugf(e, "Cannot expand %s as a stream, storing it first", zipFile);
+            }
+        } finally {
+            VFSUtils.safeClose(zipData);
+        }
+        return doMountZipExpanded(zipFile.openStream(), zipFile.getName(), mountPoint, tempFileProvider, null);
+    }
+
+    /**
+     * Create and mount an expanded zip file in a temporary file system, returning a single handle which will unmount and
+     * close the filesystem when closed.  The archive is expanded in parallel on the given executor, as by
+     * {@link VFSUtils#unzip(File, File, Executor)}.
+     *
+     * @param zipFile a zip file in the VFS
+     * @param mountPoint the point at which the filesystem should be mounted
+     * @param tempFileProvider the temporary file provider
+     * @param executor the executor to expand the archive on
+     *
+     * @return a handle
+     *
+     * @throws IOException if an error occurs
+     */
+    public static Closeable mountZipExpanded(VirtualFile zipFile, VirtualFile mountPoint, TempFileProvider tempFileProvider, Executor executor) throws IOException {
+        return mountZipExpanded(zipFile.openStream(), zipFile.getName(), mountPoint, tempFileProvider, executor);
+    }
+
+    private static void unzip(File zipFile, File destDir, Executor executor) throws IOException {
+        if (executor == null) {
+            VFSUtils.unzip(zipFile, destDir);
+        } else {
+            VFSUtils.unzip(zipFile, destDir, executor);
+        }
+    }
+
+    private static Executor checkExecutor(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("Null executor");
+        return executor;
     }
     
     /**
@@ -676,11 +975,13 @@ public class VFS {
                         newParentMounts = Collections.singletonMap(e1.getKey(), e1.getValue());
                     }
                     if (mounts.replace(parent, parentMounts, newParentMounts)) {
+                        mountsChanged();
                         log.tracef("Unmounted filesystem %s on mount point %s", fileSystem, mountPoint);
                         return;
                     }
                 } else if (parentMounts.size() == 1) {
                     if (mounts.remove(parent, parentMounts)) {
+                        mountsChanged();
                         log.tracef("Unmounted filesystem %s on mount point %s", fileSystem, mountPoint);
                         return;
                     }
@@ -688,6 +989,7 @@ public class VFS {
                     newParentMounts = new HashMap<String, Mount>(parentMounts);
                     newParentMounts.remove(name);
                     if (mounts.replace(parent, parentMounts, newParentMounts)) {
+                        mountsChanged();
                         log.tracef("Unmounted filesystem %s on mount point %s", fileSystem, mountPoint);
                         return;
                     }
@@ -719,6 +1021,26 @@ public class VFS {
         }
     }
 
+    /**
+     * The parents of all mount points, and all their ancestors, as of one generation of the mount table.
+     */
+    private static final class MountIndex {
+
+        private final int generation;
+        private final Set<VirtualFile> parents = new HashSet<VirtualFile>();
+
+        MountIndex(int generation, Set<VirtualFile> mountParents) {
+            this.generation = generation;
+            for (VirtualFile parent : mountParents) {
+                // stop at the first ancestor already added, along with all of its own
+                VirtualFile file = parent;
+                while (file != null && parents.add(file)) {
+                    file = file.getParent();
+                }
+            }
+        }
+    }
+
     private static final class LeakDescriptor extends Throwable {
 
         private static final long serialVersionUID = 6034058126740270584L;
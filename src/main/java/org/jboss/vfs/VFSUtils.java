@@ -27,7 +27,10 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -36,10 +39,12 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import org.jboss.logging.Logger;
 import org.jboss.util.collection.CollectionsFactory;
 import org.jboss.vfs.spi.MountHandle;
+import org.jboss.vfs.util.BufferPool;
 import org.jboss.vfs.util.PathTokenizer;
 import org.jboss.vfs.util.automount.Automounter;
 
@@ -358,6 +363,26 @@ public class VFSUtils {
     }
     
 
+    /**
+     * Copy all the children from the original {@link VirtualFile} to the target recursively, copying files in parallel
+     * on the given executor.  All the target directories are created first; the calling thread takes part in the copy
+     * and returns once every file has been copied.  The first exception stops the copy and is rethrown.
+     *
+     * @param original the file to copy children from
+     * @param target the file to copy the children to
+     * @param executor the executor to run the copy tasks on
+     * @throws IOException if any problems occur copying the files
+     */
+    public static void copyChildrenRecursive(VirtualFile original, VirtualFile target, Executor executor) throws IOException {
+       if(original == null) throw new IllegalArgumentException("Original VirtualFile must not be null");
+       if(target == null) throw new IllegalArgumentException("Target VirtualFile must not be null");
+       if(executor == null) throw new IllegalArgumentException("Executor must not be null");
+
+       final ConcurrentCopy copy = new ConcurrentCopy(executor);
+       copy.addChildren(original, target);
+       copy.run();
+    }
+
     /**
      * Copy input stream to output stream and close them both
      *
@@ -407,7 +432,8 @@ public class VFSUtils {
     }
 
     /**
-     * Copy input stream to output stream without closing streams. Flushes output stream when done.
+     * Copy input stream to output stream without closing streams. Flushes output stream when done.  Buffers of up to
+     * {@link #DEFAULT_BUFFER_SIZE} bytes are taken from the {@linkplain BufferPool#getDefault() default buffer pool}.
      *
      * @param is input stream
      * @param os output stream
@@ -421,10 +447,49 @@ public class VFSUtils {
             throw new IllegalArgumentException("input stream is null");
         if (os == null)
             throw new IllegalArgumentException("output stream is null");
-        byte[] buff = new byte[bufferSize];
-        int rc;
-        while ((rc = is.read(buff)) != -1) os.write(buff, 0, rc);
-        os.flush();
+        final BufferPool pool = BufferPool.getDefault();
+        final ByteBuffer buffer = bufferSize <= pool.getBufferSize() ? pool.take() : ByteBuffer.allocate(bufferSize);
+        try {
+            final byte[] buff = buffer.array();
+            int rc;
+            while ((rc = is.read(buff, 0, bufferSize)) != -1) os.write(buff, 0, rc);
+            os.flush();
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Copy an input stream to a channel without closing either, through a buffer from the {@linkplain
+     * BufferPool#getDefault() default buffer pool}.
+     *
+     * @param is input stream
+     * @param channel the channel to write to
+     *
+     * @return the number of bytes copied
+     *
+     * @throws IOException for any error
+     */
+    public static long copyStream(InputStream is, WritableByteChannel channel) throws IOException {
+        if (is == null)
+            throw new IllegalArgumentException("input stream is null");
+        if (channel == null)
+            throw new IllegalArgumentException("channel is null");
+        final BufferPool pool = BufferPool.getDefault();
+        final ByteBuffer buffer = pool.take();
+        try {
+            final byte[] buff = buffer.array();
+            long total = 0L;
+            int rc;
+            while ((rc = is.read(buff)) != -1) {
+                buffer.clear().limit(rc);
+                while (buffer.hasRemaining()) channel.write(buffer);
+                total += rc;
+            }
+            return total;
+        } finally {
+            pool.release(buffer);
+        }
     }
 
     /**
@@ -735,6 +800,76 @@ public class VFSUtils {
         }
     }
 
+    /**
+     * Recursively copy a file or directory from one location to another, copying files in parallel on the given
+     * executor.  All the target directories are created first; the calling thread takes part in the copy and returns
+     * once every file has been copied.  The first exception stops the copy and is rethrown.
+     *
+     * @param original the original file or directory
+     * @param destDir the destination directory
+     * @param executor the executor to run the copy tasks on
+     * @throws IOException if an I/O error occurs before the copy is complete
+     */
+    public static void recursiveCopy(File original, File destDir, Executor executor) throws IOException {
+        final ConcurrentCopy copy = new ConcurrentCopy(checkExecutor(executor));
+        copy.addTree(original, new File(destDir, original.getName()));
+        copy.run();
+    }
+
+    /**
+     * Recursively copy a file or directory from one location to another, copying files in parallel on the given
+     * executor.
+     *
+     * @param original the original file or directory
+     * @param destDir the destination directory
+     * @param executor the executor to run the copy tasks on
+     * @throws IOException if an I/O error occurs before the copy is complete
+     * @see #recursiveCopy(File, File, Executor)
+     */
+    public static void recursiveCopy(File original, VirtualFile destDir, Executor executor) throws IOException {
+        final ConcurrentCopy copy = new ConcurrentCopy(checkExecutor(executor));
+        copy.addTree(original, destDir.getChild(original.getName()).getPhysicalFile());
+        copy.run();
+    }
+
+    /**
+     * Recursively copy a file or directory from one location to another, copying files in parallel on the given
+     * executor.  Files within archives are read without extracting them first.
+     *
+     * @param original the original virtual file or directory
+     * @param destDir the destination directory
+     * @param executor the executor to run the copy tasks on
+     * @throws IOException if an I/O error occurs before the copy is complete
+     * @see #recursiveCopy(File, File, Executor)
+     */
+    public static void recursiveCopy(VirtualFile original, File destDir, Executor executor) throws IOException {
+        final ConcurrentCopy copy = new ConcurrentCopy(checkExecutor(executor));
+        copy.addTree(original, new File(destDir, original.getName()));
+        copy.run();
+    }
+
+    /**
+     * Recursively copy a file or directory from one location to another, copying files in parallel on the given
+     * executor.  Files within archives are read without extracting them first.
+     *
+     * @param original the original virtual file or directory
+     * @param destDir the destination virtual directory
+     * @param executor the executor to run the copy tasks on
+     * @throws IOException if an I/O error occurs before the copy is complete
+     * @see #recursiveCopy(File, File, Executor)
+     */
+    public static void recursiveCopy(VirtualFile original, VirtualFile destDir, Executor executor) throws IOException {
+        final ConcurrentCopy copy = new ConcurrentCopy(checkExecutor(executor));
+        copy.addTree(original, destDir.getChild(original.getName()).getPhysicalFile());
+        copy.run();
+    }
+
+    private static Executor checkExecutor(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("Null executor");
+        return executor;
+    }
+
     private static final InputStream EMPTY_STREAM = new InputStream() {
         public int read() throws IOException {
             return -1;
@@ -800,25 +935,10 @@ public class VFSUtils {
         try {
             final Set<File> createdDirs = new HashSet<File>();
             final Enumeration<? extends ZipEntry> entries = zip.entries();
-            FILES_LOOP:
             while (entries.hasMoreElements()) {
                 final ZipEntry zipEntry = entries.nextElement();
-                final String name = zipEntry.getName();
-                final List<String> tokens = PathTokenizer.getTokens(name);
-                final Iterator<String> it = tokens.iterator();
-                File current = destDir;
-                while (it.hasNext()) {
-                    String token = it.next();
-                    if (PathTokenizer.isCurrentToken(token) || PathTokenizer.isReverseToken(token)) {
-                        // invalid file; skip it!
-                        continue FILES_LOOP;
-                    }
-                    current = new File(current, token);
-                    if ((it.hasNext() || zipEntry.isDirectory()) && createdDirs.add(current)) {
-                        current.mkdir();
-                    }
-                }
-                if (!zipEntry.isDirectory()) {
+                final File current = getUnzipTarget(destDir, zipEntry.getName(), createdDirs);
+                if (current != null && !zipEntry.isDirectory()) {
                     final InputStream is = zip.getInputStream(zipEntry);
                     try {
                         final FileOutputStream os = new FileOutputStream(current);
@@ -840,6 +960,85 @@ public class VFSUtils {
         }
     }
 
+    /**
+     * Expand zip data from a stream to a destination directory.  The directory must exist.  The entries are extracted
+     * as their local headers are read from the stream, so the data need not be stored in a file first; entries whose
+     * sizes follow their data in a data descriptor are supported if they are deflated.  Unlike
+     * {@link #unzip(File, File)}, this does not read the central directory, so the data must start with the first
+     * entry.  If an error occurs, the destination directory may contain a partially-extracted archive, so cleanup is
+     * up to the caller.  The stream is not closed.
+     *
+     * @param zipData the zip data
+     * @param destDir the destination directory
+     *
+     * @throws IOException if an error occurs
+     */
+    public static void unzip(InputStream zipData, File destDir) throws IOException {
+        final ZipInputStream zis = new ZipInputStream(zipData);
+        final Set<File> createdDirs = new HashSet<File>();
+        ZipEntry zipEntry;
+        while ((zipEntry = zis.getNextEntry()) != null) {
+            final File current = getUnzipTarget(destDir, zipEntry.getName(), createdDirs);
+            if (current != null && !zipEntry.isDirectory()) {
+                final FileOutputStream os = new FileOutputStream(current);
+                try {
+                    VFSUtils.copyStream(zis, os);
+                    // allow an error on close to terminate the unzip
+                    os.close();
+                } finally {
+                    VFSUtils.safeClose(os);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the file to expand a zip entry to, creating its parent directories, or the directory itself for a directory
+     * entry.
+     *
+     * @param destDir the destination directory
+     * @param name the name of the entry
+     * @param createdDirs the directories created so far
+     * @return the file, or {@code null} if the name is not valid
+     */
+    static File getUnzipTarget(File destDir, String name, Set<File> createdDirs) {
+        final boolean directory = name.endsWith("/");
+        final Iterator<String> it = PathTokenizer.getTokens(name).iterator();
+        File current = destDir;
+        while (it.hasNext()) {
+            final String token = it.next();
+            if (PathTokenizer.isCurrentToken(token) || PathTokenizer.isReverseToken(token)) {
+                // invalid file; skip it!
+                return null;
+            }
+            current = new File(current, token);
+            if ((it.hasNext() || directory) && createdDirs.add(current)) {
+                current.mkdir();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Expand a zip file to a destination directory, extracting entries in parallel on the given executor.  The
+     * directory must exist.  The directory skeleton is created first from the central directory of the archive; the
+     * entries are then inflated and written by several workers sharing positional reads of the archive, with the
+     * calling thread taking part.  Archives which cannot be expanded this way, such as zip64 archives, are expanded as
+     * by {@link #unzip(File, File)}.  If an error occurs, the destination directory may contain a partially-extracted
+     * archive, so cleanup is up to the caller.
+     *
+     * @param zipFile the zip file
+     * @param destDir the destination directory
+     * @param executor the executor to run the extraction tasks on
+     *
+     * @throws IOException if an error occurs
+     */
+    public static void unzip(File zipFile, File destDir, Executor executor) throws IOException {
+        if (! new ConcurrentUnzip(zipFile, checkExecutor(executor)).run(destDir)) {
+            unzip(zipFile, destDir);
+        }
+    }
+
    /**
     * Return the mount source File for a given mount handle.
     * @param handle The handle to get the source for
@@ -865,7 +1064,9 @@ public class VFSUtils {
      * </ul>
      * In addition, like {@code ant}, if the pattern ends with a {@code /}, then an implicit <code>"**"</code> will be appended.
      * <p/>
-     * <b>See also:</b> <a href="http://ant.apache.org/manual/dirtasks.html#patterns">"Patterns" in the Ant Manual</a>
+     * <b>See also:</b> <a href="http://ant.apache.org/manual/dirtasks.html#patterns">"Patterns" in the Ant Manual</a>,
+     * and {@link org.jboss.vfs.util.GlobMatcher} for matching a glob during a walk so that subtrees which cannot match
+     * are skipped.
      *
      * @param glob the glob to match
      *
@@ -24,19 +24,39 @@ package org.jboss.vfs;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URL;
 import java.net.URISyntaxException;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.CodeSigner;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import org.jboss.vfs.spi.AttributedFileSystem;
+import org.jboss.vfs.spi.FileSystem;
+import org.jboss.vfs.spi.ImmutableFileSystem;
+import org.jboss.vfs.spi.QueryableFileSystem;
+import org.jboss.vfs.spi.TransferableFileSystem;
+import org.jboss.vfs.util.ConcurrentFilterVirtualFileVisitor;
 import org.jboss.vfs.util.FilterVirtualFileVisitor;
 import org.jboss.vfs.util.MatchAllVirtualFileFilter;
 import org.jboss.vfs.util.PathTokenizer;
@@ -59,6 +79,11 @@ public final class VirtualFile implements Serializable {
     private final String lcname;
     private final VirtualFile parent;
     private final int hashCode;
+    private transient volatile String pathName;
+    private transient volatile File pathFile;
+    private transient volatile ChildCache childCache;
+
+    private static final AtomicReferenceFieldUpdater<VirtualFile, ChildCache> childCacheUpdater = AtomicReferenceFieldUpdater.newUpdater(VirtualFile.class, ChildCache.class, "childCache");
 
     VirtualFile(String name, VirtualFile parent) {
         this.name = name;
@@ -105,23 +130,54 @@ public final class VirtualFile implements Serializable {
      * @throws IllegalArgumentException if the given virtual file is not a parent of this virtual file
      */
     public String getPathNameRelativeTo(VirtualFile parent) throws IllegalArgumentException {
-        final StringBuilder builder = new StringBuilder(160);
-        getPathNameRelativeTo(parent, builder);
-        return builder.toString();
+        return getPathName().substring(getRelativePathOffset(parent));
+    }
+
+    /**
+     * Append the path name relative to a parent virtual file to the given builder.  If the given virtual file is not a
+     * parent of this virtual file, then an {@code IllegalArgumentException} is thrown.  Unlike {@link
+     * #getPathNameRelativeTo(VirtualFile)} this does not create any intermediate strings once the path name of this
+     * file has been computed.
+     *
+     * @param parent the parent virtual file
+     * @param builder the builder to append the relative path name to
+     * @throws IllegalArgumentException if the given virtual file is not a parent of this virtual file
+     */
+    public void getPathNameRelativeTo(VirtualFile parent, StringBuilder builder) throws IllegalArgumentException {
+        final String pathName = getPathName();
+        builder.append(pathName, getRelativePathOffset(parent), pathName.length());
     }
 
-    private void getPathNameRelativeTo(VirtualFile parent, StringBuilder builder) {
+    /**
+     * Get a {@code java.io.File} for the full path name of this virtual file, for file systems which map virtual paths
+     * directly onto real ones, such as the root file system.  The instance is created once and kept along with the path
+     * name, so repeated lookups allocate nothing.  This is not necessarily the physical file of this virtual file; see
+     * {@link #getPhysicalFile()} for that.
+     *
+     * @return the file for the full path name
+     */
+    public File getPathFile() {
+        File pathFile = this.pathFile;
+        if (pathFile == null) {
+            this.pathFile = pathFile = new File(getPathName());
+        }
+        return pathFile;
+    }
+
+    private int getRelativePathOffset(VirtualFile parent) {
         if (this.parent == null) {
             throw new IllegalArgumentException("Given parent is not an ancestor of this virtual file");
         }
-        if(this.equals(parent)) {
-           return;
+        if (equals(parent)) {
+            return getPathName().length();
         }
-        if (!this.parent.equals(parent)) {
-            this.parent.getPathNameRelativeTo(parent, builder);
-            builder.append('/');
+        for (VirtualFile ancestor = this.parent; ancestor != null; ancestor = ancestor.parent) {
+            if (ancestor.equals(parent)) {
+                // no separator is appended after a root path name
+                return ancestor.parent == null ? ancestor.getPathName().length() : ancestor.getPathName().length() + 1;
+            }
         }
-        builder.append(name);
+        throw new IllegalArgumentException("Given parent is not an ancestor of this virtual file");
     }
 
     /**
@@ -132,21 +188,25 @@ public final class VirtualFile implements Serializable {
      * @return the VFS full path name
      */
     String getPathName(boolean url) {
-        final StringBuilder builder = new StringBuilder(160);
         final VirtualFile parent = this.parent;
         if (parent == null) {
             return name;
-        } else {
-            builder.append(parent.getPathName());
+        }
+        String pathName = this.pathName;
+        if (pathName == null) {
+            final String parentPathName = parent.getPathName();
+            final StringBuilder builder = new StringBuilder(parentPathName.length() + name.length() + 1);
+            builder.append(parentPathName);
             if (parent.parent != null) {
                 builder.append('/');
             }
             builder.append(name);
+            this.pathName = pathName = builder.toString();
         }
         // Perhaps this should be cached to avoid the fs stat call?
         if (url && isDirectory())
-            builder.append('/');
-        return builder.toString();
+            return pathName + "/";
+        return pathName;
     }
 
     /**
@@ -175,8 +235,44 @@ public final class VirtualFile implements Serializable {
      * @return true if the file exists, false otherwise.
      */
     public boolean exists() {
+        final NegativeLookupCache negativeLookups = VFS.negativeLookups;
+        final long generation = negativeLookups.getGeneration();
+        if (negativeLookups.isMissing(this, generation)) {
+            return false;
+        }
+        final VFS.Mount mount = VFS.getMount(this);
+        final FileSystem fileSystem = mount.getFileSystem();
+        if (fileSystem.exists(mount.getMountPoint(), this)) {
+            return true;
+        }
+        if (fileSystem instanceof ImmutableFileSystem) {
+            negativeLookups.addMissing(this, generation);
+        }
+        return false;
+    }
+
+    /**
+     * Get the existence, type, size and modification time of this file in one call.  This resolves the mount only
+     * once, and saves file system calls compared to calling {@link #exists()}, {@link #isFile()}, {@link
+     * #isDirectory()}, {@link #getSize()} and {@link #getLastModified()} one after the other.
+     *
+     * @return the file attributes
+     */
+    public FileAttributes getAttributes() {
+        final NegativeLookupCache negativeLookups = VFS.negativeLookups;
+        final long generation = negativeLookups.getGeneration();
+        if (negativeLookups.isMissing(this, generation)) {
+            return FileAttributes.NONEXISTENT;
+        }
         final VFS.Mount mount = VFS.getMount(this);
-        return mount.getFileSystem().exists(mount.getMountPoint(), this);
+        final FileSystem fileSystem = mount.getFileSystem();
+        final FileAttributes attributes = fileSystem instanceof AttributedFileSystem
+                ? ((AttributedFileSystem) fileSystem).getAttributes(mount.getMountPoint(), this)
+                : FileAttributes.of(fileSystem, mount.getMountPoint(), this);
+        if (! attributes.exists() && fileSystem instanceof ImmutableFileSystem) {
+            negativeLookups.addMissing(this, generation);
+        }
+        return attributes;
     }
     
     /**
@@ -237,6 +333,39 @@ public final class VirtualFile implements Serializable {
         return mount.getFileSystem().openInputStream(mount.getMountPoint(), this);
     }
 
+    /**
+     * Write the contents of this file to a channel.  Where the file system supports it (see {@link
+     * TransferableFileSystem}), the contents are transferred with {@link FileChannel#transferTo(long, long,
+     * WritableByteChannel)}, which the operating system may carry out without copying the data through user space;
+     * this covers real files, extracted or stored archive entries and the archives themselves.  Otherwise the contents
+     * are copied from {@link #openStream()}.  The channel is not closed, and should be in blocking mode.
+     *
+     * @param channel the channel to write to
+     *
+     * @return the number of bytes written
+     *
+     * @throws IOException for any error accessing the file system or writing to the channel
+     */
+    public long transferTo(WritableByteChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("Null channel");
+        }
+        final VFS.Mount mount = VFS.getMount(this);
+        final FileSystem fileSystem = mount.getFileSystem();
+        if (fileSystem instanceof TransferableFileSystem) {
+            final long transferred = ((TransferableFileSystem) fileSystem).transferTo(mount.getMountPoint(), this, channel);
+            if (transferred != -1L) {
+                return transferred;
+            }
+        }
+        final InputStream is = openStream();
+        try {
+            return VFSUtils.copyStream(is, channel);
+        } finally {
+            VFSUtils.safeClose(is);
+        }
+    }
+
     /**
      * Delete this virtual file
      *
@@ -262,6 +391,72 @@ public final class VirtualFile implements Serializable {
         return mount.getFileSystem().getFile(mount.getMountPoint(), this);
     }
 
+    /**
+     * Open a read-only channel on the contents of this file.  Positional reads ({@link FileChannel#read(ByteBuffer,
+     * long)}) do not move the position of the channel, so one channel may be shared by several threads.  The channel
+     * reads the physical file (see {@link #getPhysicalFile()}), so for files within an archive the entry is copied out
+     * first.  The caller must close the channel.
+     *
+     * @return the channel
+     *
+     * @throws IOException for any error accessing the file system
+     */
+    public FileChannel openChannel() throws IOException {
+        return new RandomAccessFile(getPhysicalFile(), "r").getChannel();
+    }
+
+    /**
+     * Map a region of this file into memory, read-only.  The mapping stays valid after this method returns and is
+     * released when the buffer is garbage collected.
+     *
+     * @param position the position within the file at which the region starts
+     * @param size the size of the region
+     *
+     * @return the mapped region
+     *
+     * @throws IOException for any error accessing the file system
+     * @see #openChannel()
+     */
+    public MappedByteBuffer map(long position, long size) throws IOException {
+        final FileChannel channel = openChannel();
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        } finally {
+            VFSUtils.safeClose(channel);
+        }
+    }
+
+    /**
+     * Get the whole contents of this file in a buffer.  Files of at least {@code jboss.vfs.mapThreshold} bytes (256 KiB
+     * by default) are mapped read-only; smaller ones, for which mapping costs more than it saves, are read into a heap
+     * buffer which belongs to the caller.
+     *
+     * @return the contents, between position 0 and the limit
+     *
+     * @throws IOException for any error accessing the file system, or if the file is larger than a buffer can hold
+     * @see #openChannel()
+     */
+    public ByteBuffer getContents() throws IOException {
+        final FileChannel channel = openChannel();
+        try {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + this + " is too large for a buffer (" + size + " bytes)");
+            }
+            if (size >= VFS.MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) != -1) {
+                // keep reading
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            VFSUtils.safeClose(channel);
+        }
+    }
+
     /**
      * Get a {@code VirtualFile} which represents the parent of this instance.
      *
@@ -316,17 +511,63 @@ public final class VirtualFile implements Serializable {
         final List<String> names = mount.getFileSystem().getDirectoryEntries(mount.getMountPoint(), this);
         final List<VirtualFile> virtualFiles = new ArrayList<VirtualFile>(names.size() + submounts.size());
         for (String name : names) {
-            final VirtualFile child = new VirtualFile(name, this);
+            final VirtualFile child = newChild(name);
             virtualFiles.add(child);
             submounts.remove(name);
         }
         for (String name : submounts) {
-           final VirtualFile child = new VirtualFile(name, this);
+           final VirtualFile child = newChild(name);
            virtualFiles.add(child);
         }
         return virtualFiles;
     }
 
+    /**
+     * Get the immediate child with the given name.  If {@link VFS#CACHE_VIRTUAL_FILES} is set, an existing instance
+     * is returned for as long as it is strongly reachable.
+     *
+     * @param name the child name
+     * @return the child
+     */
+    VirtualFile newChild(String name) {
+        if (! VFS.CACHE_VIRTUAL_FILES) {
+            return new VirtualFile(name, this);
+        }
+        ChildCache childCache = this.childCache;
+        if (childCache == null) {
+            childCacheUpdater.compareAndSet(this, null, new ChildCache());
+            childCache = this.childCache;
+        }
+        return childCache.getChild(name, this);
+    }
+
+    /**
+     * Get the children together with their attributes, as read from a single directory listing of the file system.
+     * Children which are mount points are reported with the attributes of the root of the mounted file system.  The
+     * caller is expected to know that this file is a directory.
+     *
+     * @return the children and their attributes, in directory order
+     */
+    Map<VirtualFile, FileAttributes> getChildAttributes() {
+        final VFS.Mount mount = VFS.getMount(this);
+        final Set<String> submounts = VFS.getSubmounts(this);
+        final FileSystem fileSystem = mount.getFileSystem();
+        final Map<String, FileAttributes> entries = fileSystem instanceof AttributedFileSystem
+                ? ((AttributedFileSystem) fileSystem).getDirectoryEntryAttributes(mount.getMountPoint(), this)
+                : FileAttributes.ofEntries(fileSystem, mount.getMountPoint(), this);
+        final Map<VirtualFile, FileAttributes> children = new LinkedHashMap<VirtualFile, FileAttributes>((entries.size() + submounts.size()) * 4 / 3 + 1);
+        for (Map.Entry<String, FileAttributes> entry : entries.entrySet()) {
+            final String name = entry.getKey();
+            final VirtualFile child = newChild(name);
+            children.put(child, submounts.remove(name) ? child.getAttributes() : entry.getValue());
+        }
+        for (String name : submounts) {
+            final VirtualFile child = newChild(name);
+            children.put(child, child.getAttributes());
+        }
+        return children;
+    }
+
     /**
      * Get the children
      *
@@ -364,7 +605,9 @@ public final class VirtualFile implements Serializable {
     /**
      * Get all the children recursively<p>
      * <p/>
-     * This always uses {@link VisitorAttributes#RECURSE}
+     * This always uses {@link VisitorAttributes#RECURSE}.  If the filter is a {@link VirtualFileFilterWithQuery}, file
+     * systems which implement {@link QueryableFileSystem} are searched by the file system itself, and the children
+     * are returned in the order in which the file systems find them.
      *
      * @param filter to filter the children
      *
@@ -378,11 +621,163 @@ public final class VirtualFile implements Serializable {
             return Collections.emptyList();
         if (filter == null)
             filter = MatchAllVirtualFileFilter.INSTANCE;
+        if (filter instanceof VirtualFileFilterWithQuery) {
+            final EntryQuery query = ((VirtualFileFilterWithQuery) filter).getQuery();
+            if (query != null) {
+                final List<VirtualFile> found = new ArrayList<VirtualFile>();
+                findChildren(filter, query, found);
+                return found;
+            }
+        }
         FilterVirtualFileVisitor visitor = new FilterVirtualFileVisitor(filter, VisitorAttributes.RECURSE);
         visit(visitor);
         return visitor.getMatched();
     }
 
+    /**
+     * Get all the children recursively whose names match a query.  This is the same as {@link
+     * #getChildrenRecursively(VirtualFileFilter)} with the filter of the query.  Mounted archives answer queries for
+     * name suffixes such as file extensions from an index, at a cost which depends on the number of matches rather
+     * than on the size of the archive.
+     *
+     * @param query the query
+     *
+     * @return the children, in the order in which the file systems find them
+     *
+     * @throws IOException for any problem accessing the virtual file system
+     * @throws IllegalArgumentException if the query is null
+     */
+    public List<VirtualFile> findChildren(EntryQuery query) throws IOException {
+        if (query == null)
+            throw new IllegalArgumentException("Null query");
+        if (!isDirectory())
+            return Collections.emptyList();
+        final List<VirtualFile> found = new ArrayList<VirtualFile>();
+        findChildren(query.asFilter(), query, found);
+        return found;
+    }
+
+    /**
+     * Search the tree below this directory, leaving the search to the file system where it supports queries.  The
+     * parts of the tree which are mounted from other file systems are searched separately; they are walked with the
+     * filter if their file system does not support queries.  The files found by the query are passed to the filter.
+     *
+     * @param filter the filter, which accepts no file the query does not match
+     * @param query the query
+     * @param found the list to add the matching children to
+     *
+     * @throws IOException for any problem accessing the virtual file system
+     */
+    private void findChildren(VirtualFileFilter filter, EntryQuery query, List<VirtualFile> found) throws IOException {
+        final VFS.Mount mount = VFS.getMount(this);
+        final FileSystem fileSystem = mount.getFileSystem();
+        if (! (fileSystem instanceof QueryableFileSystem)) {
+            final FilterVirtualFileVisitor visitor = new FilterVirtualFileVisitor(filter, VisitorAttributes.RECURSE);
+            visitChildren(visitor, VisitorAttributes.RECURSE);
+            found.addAll(visitor.getMatched());
+            return;
+        }
+        final List<String> paths = ((QueryableFileSystem) fileSystem).findEntries(mount.getMountPoint(), this, query);
+        final List<VirtualFile> mountPoints = VFS.getMountPointsBelow(this);
+        if (mountPoints.isEmpty()) {
+            for (String path : paths) {
+                final VirtualFile child = getChild(path);
+                if (filter.accepts(child))
+                    found.add(child);
+            }
+            return;
+        }
+        final String[] mountPaths = new String[mountPoints.size()];
+        for (int i = 0; i < mountPaths.length; i++) {
+            mountPaths[i] = mountPoints.get(i).getPathNameRelativeTo(this);
+        }
+        PATHS: for (String path : paths) {
+            for (String mountPath : mountPaths) {
+                if (path.startsWith(mountPath) && (path.length() == mountPath.length() || path.charAt(mountPath.length()) == '/'))
+                    continue PATHS;
+            }
+            final VirtualFile child = getChild(path);
+            if (filter.accepts(child))
+                found.add(child);
+        }
+        MOUNTS: for (int i = 0; i < mountPaths.length; i++) {
+            // mount points below another one are searched from there
+            for (String mountPath : mountPaths) {
+                if (mountPaths[i].length() > mountPath.length() && mountPaths[i].startsWith(mountPath) && mountPaths[i].charAt(mountPath.length()) == '/')
+                    continue MOUNTS;
+            }
+            final VirtualFile mountPoint = mountPoints.get(i);
+            if (filter.accepts(mountPoint))
+                found.add(mountPoint);
+            if (mountPoint.isDirectory())
+                mountPoint.findChildren(filter, query, found);
+        }
+    }
+
+    /**
+     * Get all the children recursively, listing directories in parallel on the given executor.  The order of the
+     * returned children is undefined.
+     * <p/>
+     * This always uses {@link VisitorAttributes#RECURSE}
+     *
+     * @param filter to filter the children; must be thread-safe
+     * @param executor the executor to run the listing tasks on
+     *
+     * @return the children
+     *
+     * @throws IOException for any problem accessing the virtual file system
+     * @see #visit(ConcurrentVirtualFileVisitor, Executor)
+     */
+    public List<VirtualFile> getChildrenRecursively(VirtualFileFilter filter, Executor executor) throws IOException {
+        if (!isDirectory())
+            return Collections.emptyList();
+        if (filter == null)
+            filter = MatchAllVirtualFileFilter.INSTANCE;
+        ConcurrentFilterVirtualFileVisitor visitor = new ConcurrentFilterVirtualFileVisitor(filter, VisitorAttributes.RECURSE);
+        visit(visitor, executor);
+        return visitor.getMatched();
+    }
+
+    /**
+     * Walk the children recursively without collecting them first.  Directories are listed one at a time as the
+     * returned iterators reach them, so a caller which stops after the first or the first few matches only pays for the
+     * part of the tree walked so far.
+     * <p/>
+     * This always uses {@link VisitorAttributes#RECURSE}
+     *
+     * @param filter to filter the children, or {@code null} for all of them
+     *
+     * @return a lazy view of the children, in the order of {@link #visit(VirtualFileVisitor)}
+     */
+    public Iterable<VirtualFile> iterateChildrenRecursively(VirtualFileFilter filter) {
+        return iterateChildren(filter, VisitorAttributes.RECURSE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Walk the children without collecting them first.  Directories are listed one at a time as the returned iterators
+     * reach them.  The recurse filter of the visitor attributes is consulted before a directory is entered, and so can
+     * be used to prune whole subtrees.
+     *
+     * @param filter to filter the children, or {@code null} for all of them
+     * @param attributes the visitor attributes, or {@code null} for {@link VisitorAttributes#DEFAULT}
+     * @param maxDepth the maximum depth to descend to; 1 for the immediate children only
+     *
+     * @return a lazy view of the children, in the order of {@link #visit(VirtualFileVisitor)}
+     *
+     * @throws IllegalArgumentException if the maximum depth is negative
+     */
+    public Iterable<VirtualFile> iterateChildren(VirtualFileFilter filter, VisitorAttributes attributes, final int maxDepth) {
+        if (maxDepth < 0)
+            throw new IllegalArgumentException("Negative maximum depth");
+        final VirtualFileFilter theFilter = filter == null ? MatchAllVirtualFileFilter.INSTANCE : filter;
+        final VisitorAttributes theAttributes = attributes == null ? VisitorAttributes.DEFAULT : attributes;
+        return new Iterable<VirtualFile>() {
+            public Iterator<VirtualFile> iterator() {
+                return new VirtualFileWalker(VirtualFile.this, theFilter, theAttributes, maxDepth);
+            }
+        };
+    }
+
     /**
      * Visit the virtual file system
      *
@@ -393,24 +788,56 @@ public final class VirtualFile implements Serializable {
      * @throws IllegalStateException if the file is closed
      */
     public void visit(VirtualFileVisitor visitor) throws IOException {
-        visit(visitor, true);
-    }
-
-    private void visit(VirtualFileVisitor visitor, boolean root) throws IOException {
         final VisitorAttributes visitorAttributes = visitor.getAttributes();
-        if (root && visitorAttributes.isIncludeRoot())
+        if (visitorAttributes.isIncludeRoot())
             visitor.visit(this);
-        if (!isDirectory())
-            return;
-        for (VirtualFile child : getChildren()) {
+        if (isDirectory())
+            visitChildren(visitor, visitorAttributes);
+    }
+
+    /**
+     * Visit the virtual file system, listing directories in parallel on the given executor.  Sibling directories,
+     * including those on different mounts, are walked concurrently; the calling thread takes part in the walk and
+     * returns once every directory has been visited.  The first exception thrown by the visitor or the file system
+     * stops the walk and is rethrown.
+     *
+     * @param visitor the thread-safe visitor
+     * @param executor the executor to run the listing tasks on
+     *
+     * @throws IOException for any problem accessing the virtual file system
+     * @throws IllegalArgumentException if the visitor or executor is null
+     */
+    public void visit(ConcurrentVirtualFileVisitor visitor, Executor executor) throws IOException {
+        if (visitor == null)
+            throw new IllegalArgumentException("Null visitor");
+        if (executor == null)
+            throw new IllegalArgumentException("Null executor");
+        new ConcurrentVisit(visitor, executor, Runtime.getRuntime().availableProcessors()).run(this);
+    }
+
+    private void visitChildren(VirtualFileVisitor visitor, VisitorAttributes visitorAttributes) throws IOException {
+        for (Map.Entry<VirtualFile, FileAttributes> entry : getChildAttributes().entrySet()) {
+            final VirtualFile child = entry.getKey();
             // Always visit a leaf, and visit directories when leaves only is false
-            if (!child.isDirectory() || !visitorAttributes.isLeavesOnly())
+            if (!entry.getValue().isDirectory() || !visitorAttributes.isLeavesOnly())
                 visitor.visit(child);
-            if (child.isDirectory() && visitorAttributes.isRecurse(child))
-                child.visit(visitor, false);
+            if (child.isDirectory(entry.getValue()) && visitorAttributes.isRecurse(child))
+                child.visitChildren(visitor, visitorAttributes);
         }
     }
 
+    /**
+     * Determine whether this file, as listed by {@link #getChildAttributes()} with the given attributes, is a directory.
+     * The listing holds unless something has been mounted on this file since, as a visitor such as the automounter may
+     * do on the file it is visiting.
+     *
+     * @param listed the attributes from the listing
+     * @return {@code true} if this file is a directory
+     */
+    boolean isDirectory(FileAttributes listed) {
+        return VFS.isMountPoint(this) ? isDirectory() : listed.isDirectory();
+    }
+
     /**
      * Get a child virtual file.  The child may or may not exist in the virtual filesystem.
      *
@@ -430,7 +857,7 @@ public final class VirtualFile implements Serializable {
                 final VirtualFile parent = current.parent;
                 current = parent == null ? current : parent;
             } else if (PathTokenizer.isCurrentToken(part) == false) {
-                current = new VirtualFile(part, current);
+                current = current.newChild(part);
             }
         }
         return current;
@@ -593,4 +1020,55 @@ public final class VirtualFile implements Serializable {
     public int hashCode() {
         return hashCode;
     }
+
+    private Object readResolve() {
+        if (! VFS.CACHE_VIRTUAL_FILES) {
+            return this;
+        }
+        return parent == null ? VFS.getCanonicalRoot(name) : parent.newChild(name);
+    }
+
+    /**
+     * The weakly held children of a virtual file which have been handed out so far.  Entries are dropped once
+     * the child is no longer referenced; a child holds its parent strongly, so a cached parent chain lives
+     * exactly as long as some leaf of it is in use.
+     */
+    private static final class ChildCache {
+        private final ConcurrentMap<String, ChildReference> children = new ConcurrentHashMap<String, ChildReference>(8, 0.75f, 4);
+        private final ReferenceQueue<VirtualFile> queue = new ReferenceQueue<VirtualFile>();
+
+        VirtualFile getChild(String name, VirtualFile parent) {
+            expungeStaleEntries();
+            for (;;) {
+                final ChildReference reference = children.get(name);
+                if (reference != null) {
+                    final VirtualFile child = reference.get();
+                    if (child != null) {
+                        return child;
+                    }
+                }
+                final VirtualFile child = new VirtualFile(name, parent);
+                final ChildReference newReference = new ChildReference(child, queue);
+                if (reference == null ? children.putIfAbsent(name, newReference) == null : children.replace(name, reference, newReference)) {
+                    return child;
+                }
+            }
+        }
+
+        private void expungeStaleEntries() {
+            ChildReference reference;
+            while ((reference = (ChildReference) queue.poll()) != null) {
+                children.remove(reference.name, reference);
+            }
+        }
+    }
+
+    private static final class ChildReference extends WeakReference<VirtualFile> {
+        private final String name;
+
+        ChildReference(VirtualFile child, ReferenceQueue<VirtualFile> queue) {
+            super(child, queue);
+            name = child.name;
+        }
+    }
 }
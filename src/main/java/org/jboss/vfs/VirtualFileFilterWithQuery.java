@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+/**
+ * A filter which can be described by an {@link EntryQuery}.  The filter must accept only files whose names match the
+ * query; {@link VirtualFile#getChildrenRecursively(VirtualFileFilter)} then hands the query to file systems which can
+ * answer it from an index, and only calls the filter on the files the query finds.  The query may match more files
+ * than the filter accepts, but the closer it is to the filter, the less work is left for the filter.
+ */
+public interface VirtualFileFilterWithQuery extends VirtualFileFilter {
+
+    /**
+     * Get the query describing this filter.
+     *
+     * @return the query, or {@code null} if this instance cannot be expressed as a query
+     */
+    EntryQuery getQuery();
+}
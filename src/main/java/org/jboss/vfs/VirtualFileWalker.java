@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A lazy depth-first walk of a virtual file tree, in the same order as {@link VirtualFile#visit(VirtualFileVisitor)}.
+ * Only the directories on the path to the current file are held in memory, and a directory is listed only when the walk
+ * reaches it.
+ */
+final class VirtualFileWalker implements Iterator<VirtualFile> {
+
+    private final VirtualFile root;
+    private final VirtualFileFilter filter;
+    private final VisitorAttributes attributes;
+    private final int maxDepth;
+
+    /** One open directory listing per level below the root */
+    private final List<Iterator<Map.Entry<VirtualFile, FileAttributes>>> stack = new ArrayList<Iterator<Map.Entry<VirtualFile, FileAttributes>>>();
+    /**
+     * The last file returned or considered, to be listed before moving on if it is a directory then; the caller or the
+     * filter may have mounted something on it meanwhile
+     */
+    private VirtualFile pendingChild;
+    /** The attributes {@link #pendingChild} was listed with, or {@code null} for the root */
+    private FileAttributes pendingAttributes;
+    private boolean started;
+    private VirtualFile next;
+
+    VirtualFileWalker(VirtualFile root, VirtualFileFilter filter, VisitorAttributes attributes, int maxDepth) {
+        this.root = root;
+        this.filter = filter;
+        this.attributes = attributes;
+        this.maxDepth = maxDepth;
+    }
+
+    public boolean hasNext() {
+        return next != null || (next = advance()) != null;
+    }
+
+    public VirtualFile next() {
+        if (! hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final VirtualFile next = this.next;
+        this.next = null;
+        return next;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private VirtualFile advance() {
+        if (! started) {
+            started = true;
+            if (maxDepth > 0) {
+                pendingChild = root;
+            }
+            if (attributes.isIncludeRoot() && filter.accepts(root)) {
+                return root;
+            }
+        }
+        final List<Iterator<Map.Entry<VirtualFile, FileAttributes>>> stack = this.stack;
+        for (;;) {
+            final VirtualFile pending = pendingChild;
+            if (pending != null) {
+                pendingChild = null;
+                if (pendingAttributes == null ? pending.isDirectory() : (pending.isDirectory(pendingAttributes) && attributes.isRecurse(pending))) {
+                    stack.add(pending.getChildAttributes().entrySet().iterator());
+                }
+            }
+            final int depth = stack.size();
+            if (depth == 0) {
+                return null;
+            }
+            final Iterator<Map.Entry<VirtualFile, FileAttributes>> entries = stack.get(depth - 1);
+            if (! entries.hasNext()) {
+                stack.remove(depth - 1);
+                continue;
+            }
+            final Map.Entry<VirtualFile, FileAttributes> entry = entries.next();
+            final VirtualFile child = entry.getKey();
+            if (depth < maxDepth) {
+                pendingChild = child;
+                pendingAttributes = entry.getValue();
+            }
+            // Always consider a leaf, and directories when leaves only is false
+            if ((! entry.getValue().isDirectory() || ! attributes.isLeavesOnly()) && filter.accepts(child)) {
+                return child;
+            }
+        }
+    }
+}
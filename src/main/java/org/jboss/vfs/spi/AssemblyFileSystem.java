@@ -25,11 +25,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.FileNotFoundException;
+import java.nio.channels.WritableByteChannel;
 import java.security.CodeSigner;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
+import org.jboss.vfs.FileAttributes;
 import org.jboss.vfs.VirtualFile;
 import org.jboss.vfs.VirtualFileAssembly;
 import org.jboss.logging.Logger;
@@ -39,7 +42,7 @@ import org.jboss.logging.Logger;
  *
  * @author <a href="baileyje@gmail.com">John Bailey</a>
  */
-public class AssemblyFileSystem implements FileSystem {
+public class AssemblyFileSystem implements AttributedFileSystem, TransferableFileSystem {
 
     private static final Logger log = Logger.getLogger("org.jboss.vfs.assembly");
 
@@ -93,6 +96,11 @@ public class AssemblyFileSystem implements FileSystem {
         return directoryEntries;
     }
 
+    /** {@inheritDoc} */
+    public Map<String, FileAttributes> getDirectoryEntryAttributes(VirtualFile mountPoint, VirtualFile target) {
+        return FileAttributes.ofEntries(this, mountPoint, target);
+    }
+
     /** {@inheritDoc} */
     public long getLastModified(VirtualFile mountPoint, VirtualFile target) {
         final VirtualFile assemblyFile = assembly.getFile(mountPoint, target);
@@ -115,6 +123,16 @@ public class AssemblyFileSystem implements FileSystem {
         return assembly.contains(mountPoint, target);
     }
 
+    /** {@inheritDoc} */
+    public FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        if(mountPoint.equals(target))
+           return new FileAttributes(true, false, true, 0L, 0L);
+        final VirtualFile assemblyFile = assembly.getFile(mountPoint, target);
+        if(assemblyFile != null)
+           return assemblyFile.getAttributes();
+        return assembly.contains(mountPoint, target) ? new FileAttributes(true, false, true, 0L, 0L) : FileAttributes.NONEXISTENT;
+    }
+
     /** {@inheritDoc} */
     public boolean isReadOnly() {
         return false;
@@ -131,6 +149,15 @@ public class AssemblyFileSystem implements FileSystem {
         assembly.close();
     }
     
+    /** {@inheritDoc} */
+    public long transferTo(VirtualFile mountPoint, VirtualFile target, WritableByteChannel channel) throws IOException {
+        final VirtualFile assemblyFile = assembly.getFile(mountPoint, target);
+        if (assemblyFile == null || ! assemblyFile.isFile()) {
+           return -1L;
+        }
+        return assemblyFile.transferTo(channel);
+    }
+
     /** {@inheritDoc} */
     public CodeSigner[] getCodeSigners(VirtualFile mountPoint, VirtualFile target) {
        final VirtualFile assemblyFile = assembly.getFile(mountPoint, target);
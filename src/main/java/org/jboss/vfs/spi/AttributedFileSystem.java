@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.spi;
+
+import java.util.Map;
+
+import org.jboss.vfs.FileAttributes;
+import org.jboss.vfs.VirtualFile;
+
+/**
+ * A file system which can read all the basic attributes of a file, or of all the entries of a directory, in one call,
+ * rather than answering each of the individual questions of {@link FileSystem} separately.  File systems which do not
+ * implement this are asked through {@link FileAttributes#of(FileSystem, VirtualFile, VirtualFile)} and {@link
+ * FileAttributes#ofEntries(FileSystem, VirtualFile, VirtualFile)}.
+ *
+ * @see VirtualFile#getAttributes()
+ */
+public interface AttributedFileSystem extends FileSystem {
+
+    /**
+     * Get the existence, type, size and modification time of a virtual file within this filesystem in one call.
+     *
+     * @param mountPoint the mount point of the filesystem instance (guaranteed to be a parent of {@code target})
+     * @param target the virtual file to act upon
+     *
+     * @return the attributes, or {@link FileAttributes#NONEXISTENT} if the file does not exist
+     */
+    FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target);
+
+    /**
+     * Read a directory together with the attributes of its entries.  This is equivalent to calling {@link
+     * #getAttributes(VirtualFile, VirtualFile)} for each of the {@link #getDirectoryEntries(VirtualFile, VirtualFile)},
+     * but lets the filesystem answer from a single pass over the directory.  Implementations which cannot do better may
+     * return {@link FileAttributes#ofEntries(FileSystem, VirtualFile, VirtualFile)}.
+     *
+     * @param mountPoint the mount point of the filesystem instance (guaranteed to be a parent of {@code target})
+     * @param target the virtual file to act upon
+     *
+     * @return the attributes of the children by name, empty if the node is not a directory
+     */
+    Map<String, FileAttributes> getDirectoryEntryAttributes(VirtualFile mountPoint, VirtualFile target);
+}
@@ -0,0 +1,445 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.spi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.security.CodeSigner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.logging.Logger;
+import org.jboss.vfs.EntryQuery;
+import org.jboss.vfs.FileAttributes;
+import org.jboss.vfs.VirtualFile;
+
+/**
+ * A real filesystem which caches the attributes and directory listings of the files it has been asked about, for
+ * trees which are scanned over and over, such as exploded deployments.
+ * <p/>
+ * Cached information is used as is for the check interval given on construction.  After that it is checked against
+ * the modification time of the file, which costs a single file system call, and only read again if that has changed.
+ * Adding or removing an entry changes the modification time of a directory, so listings are kept up to date this way
+ * as well.  Since modification times have a coarse granularity on some file systems, information read within
+ * {@link #MODIFICATION_GRANULARITY} milliseconds of the last modification is never trusted beyond the check interval.
+ * Files deleted through this file system are forgotten immediately.
+ * <p/>
+ * The cache holds at most the number of files given on construction; when it is full it is simply emptied.
+ */
+public final class CachingRealFileSystem implements AttributedFileSystem, QueryableFileSystem, TransferableFileSystem {
+
+    private static final Logger log = Logger.getLogger("org.jboss.vfs.real");
+
+    /**
+     * The default maximum number of cached files.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 8192;
+
+    /**
+     * The default check interval, in milliseconds.
+     */
+    public static final long DEFAULT_CHECK_INTERVAL = 2000L;
+
+    /**
+     * The time, in milliseconds, after a modification during which information about a file cannot be told apart
+     * from information read before another modification.
+     */
+    public static final long MODIFICATION_GRANULARITY = 2000L;
+
+    private static final boolean NEEDS_CONVERSION = File.separatorChar != '/';
+
+    private final File realRoot;
+    private final int maxEntries;
+    private final long checkInterval;
+    private final ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Construct a caching real filesystem with the default limits.
+     *
+     * @param realRoot the real root
+     */
+    public CachingRealFileSystem(File realRoot) {
+        this(realRoot, DEFAULT_MAX_ENTRIES, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Construct a caching real filesystem.
+     *
+     * @param realRoot the real root
+     * @param maxEntries the maximum number of files to cache
+     * @param checkInterval the time in milliseconds for which cached information is used without checking the
+     * modification time of the file; 0 to check every time
+     */
+    public CachingRealFileSystem(File realRoot, int maxEntries, long checkInterval) {
+        if (realRoot == null)
+            throw new IllegalArgumentException("Null realRoot");
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be positive");
+        if (checkInterval < 0L)
+            throw new IllegalArgumentException("checkInterval must not be negative");
+        this.realRoot = realRoot;
+        this.maxEntries = maxEntries;
+        this.checkInterval = TimeUnit.MILLISECONDS.toNanos(checkInterval);
+        log.tracef("Constructed caching real filesystem at root %s", realRoot);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public InputStream openInputStream(VirtualFile mountPoint, VirtualFile target) throws IOException {
+        return new FileInputStream(getFile(mountPoint, target));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public File getFile(VirtualFile mountPoint, VirtualFile target) {
+        return getNode(getPath(mountPoint, target)).file;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean delete(VirtualFile mountPoint, VirtualFile target) {
+        final String path = getPath(mountPoint, target);
+        final boolean deleted = getNode(path).file.delete();
+        invalidate(path);
+        return deleted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getSize(VirtualFile mountPoint, VirtualFile target) {
+        return getAttributes(mountPoint, target).getSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getLastModified(VirtualFile mountPoint, VirtualFile target) {
+        return getAttributes(mountPoint, target).getLastModified();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean exists(VirtualFile mountPoint, VirtualFile target) {
+        return getAttributes(mountPoint, target).exists();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isFile(VirtualFile mountPoint, VirtualFile target) {
+        return getAttributes(mountPoint, target).isFile();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isDirectory(VirtualFile mountPoint, VirtualFile target) {
+        return getAttributes(mountPoint, target).isDirectory();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        return getNode(getPath(mountPoint, target)).getAttributes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<String> getDirectoryEntries(VirtualFile mountPoint, VirtualFile target) {
+        return getNode(getPath(mountPoint, target)).getEntries();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, FileAttributes> getDirectoryEntryAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final String path = getPath(mountPoint, target);
+        final List<String> names = getNode(path).getEntries();
+        if (names.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final String prefix = path.length() == 0 ? path : path + "/";
+        final Map<String, FileAttributes> entries = new LinkedHashMap<String, FileAttributes>(names.size() * 4 / 3 + 1);
+        for (String name : names) {
+            entries.put(name, getNode(prefix + name).getAttributes());
+        }
+        return entries;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<String> findEntries(VirtualFile mountPoint, VirtualFile target, EntryQuery query) {
+        final String path = getPath(mountPoint, target);
+        final List<String> found = new ArrayList<String>();
+        findEntries(path.length() == 0 ? path : path + "/", query, new StringBuilder(), found);
+        return found;
+    }
+
+    private void findEntries(String directory, EntryQuery query, StringBuilder path, List<String> found) {
+        final List<String> names = getNode(directory.length() == 0 ? directory : directory.substring(0, directory.length() - 1)).getEntries();
+        final int length = path.length();
+        for (String name : names) {
+            path.setLength(length);
+            path.append(name);
+            if (query.matches(name)) {
+                found.add(path.toString());
+            }
+            final String child = directory + name;
+            if (getNode(child).getAttributes().isDirectory()) {
+                path.append('/');
+                findEntries(child + "/", query, path, found);
+            }
+        }
+        path.setLength(length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long transferTo(VirtualFile mountPoint, VirtualFile target, WritableByteChannel channel) throws IOException {
+        return RealFileSystem.transferTo(getFile(mountPoint, target), channel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public CodeSigner[] getCodeSigners(VirtualFile mountPoint, VirtualFile target) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public File getMountSource() {
+        return realRoot;
+    }
+
+    /**
+     * Forget everything cached about the files of this file system, for instance after they were changed by other
+     * means within the check interval.
+     */
+    public void flush() {
+        nodes.clear();
+        size.set(0);
+    }
+
+    /**
+     * Get the number of files currently cached.
+     *
+     * @return the number of files
+     */
+    public int getCachedCount() {
+        return nodes.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException {
+        flush();
+    }
+
+    private static String getPath(VirtualFile mountPoint, VirtualFile target) {
+        return mountPoint.equals(target) ? "" : target.getPathNameRelativeTo(mountPoint);
+    }
+
+    private Node getNode(String path) {
+        Node node = nodes.get(path);
+        if (node == null) {
+            final File file;
+            if (path.length() == 0) {
+                file = realRoot;
+            } else if (NEEDS_CONVERSION) {
+                file = new File(realRoot, path.replace('/', File.separatorChar));
+            } else {
+                file = new File(realRoot, path);
+            }
+            node = new Node(file);
+            final Node appearing = nodes.putIfAbsent(path, node);
+            if (appearing != null) {
+                return appearing;
+            }
+            if (size.incrementAndGet() > maxEntries) {
+                // like the negative lookup cache: start over rather than track usage on every hit
+                flush();
+            }
+        }
+        return node;
+    }
+
+    private void invalidate(String path) {
+        if (nodes.remove(path) != null) {
+            size.decrementAndGet();
+        }
+        final int slash = path.lastIndexOf('/');
+        final Node parent = nodes.get(slash == -1 ? "" : path.substring(0, slash));
+        if (parent != null) {
+            parent.listing = null;
+        }
+    }
+
+    private boolean isCurrent(Snapshot snapshot, long now) {
+        return now - snapshot.checked < checkInterval;
+    }
+
+    /**
+     * The cached information about one file.  Snapshots are replaced as a whole, so readers always see consistent
+     * information without locking.
+     */
+    private final class Node {
+        final File file;
+        volatile Stat stat;
+        volatile Listing listing;
+
+        Node(File file) {
+            this.file = file;
+        }
+
+        FileAttributes getAttributes() {
+            final long now = System.nanoTime();
+            final Stat stat = this.stat;
+            if (stat != null) {
+                if (isCurrent(stat, now)) {
+                    return stat.attributes;
+                }
+                if (stat.isUnchanged(file.lastModified())) {
+                    this.stat = new Stat(stat.attributes, stat.read, now);
+                    return stat.attributes;
+                }
+            }
+            final long read = System.currentTimeMillis();
+            final FileAttributes attributes;
+            if (file.isFile()) {
+                attributes = new FileAttributes(true, true, false, file.length(), file.lastModified());
+            } else if (file.isDirectory()) {
+                attributes = new FileAttributes(true, false, true, file.length(), file.lastModified());
+            } else if (file.exists()) {
+                attributes = new FileAttributes(true, false, false, file.length(), file.lastModified());
+            } else {
+                attributes = FileAttributes.NONEXISTENT;
+            }
+            this.stat = new Stat(attributes, read, now);
+            return attributes;
+        }
+
+        List<String> getEntries() {
+            final long now = System.nanoTime();
+            final Listing listing = this.listing;
+            long lastModified = 0L;
+            if (listing != null) {
+                if (isCurrent(listing, now)) {
+                    return listing.names;
+                }
+                lastModified = file.lastModified();
+                if (listing.isUnchanged(lastModified)) {
+                    this.listing = new Listing(listing.names, listing.lastModified, listing.read, now);
+                    return listing.names;
+                }
+            } else {
+                lastModified = file.lastModified();
+            }
+            final long read = System.currentTimeMillis();
+            final String[] names = file.list();
+            final List<String> list = names == null ? Collections.<String>emptyList() : Collections.unmodifiableList(Arrays.asList(names));
+            this.listing = new Listing(list, lastModified, read, now);
+            return list;
+        }
+    }
+
+    private abstract static class Snapshot {
+        /** The wall clock time at which the information was read */
+        final long read;
+        /** The {@link System#nanoTime()} at which the information was last known to be current */
+        final long checked;
+
+        Snapshot(long read, long checked) {
+            this.read = read;
+            this.checked = checked;
+        }
+
+        /**
+         * Determine whether the file is unchanged since the information was read.
+         *
+         * @param lastModified the current modification time of the file, 0 if it does not exist
+         * @param recorded the modification time recorded with the information
+         * @return {@code true} if the information can still be used
+         */
+        boolean isUnchanged(long lastModified, long recorded) {
+            return lastModified == recorded && (lastModified == 0L || read - lastModified >= MODIFICATION_GRANULARITY);
+        }
+    }
+
+    private static final class Stat extends Snapshot {
+        final FileAttributes attributes;
+
+        Stat(FileAttributes attributes, long read, long checked) {
+            super(read, checked);
+            this.attributes = attributes;
+        }
+
+        boolean isUnchanged(long lastModified) {
+            return isUnchanged(lastModified, attributes.getLastModified());
+        }
+    }
+
+    private static final class Listing extends Snapshot {
+        final List<String> names;
+        final long lastModified;
+
+        Listing(List<String> names, long lastModified, long read, long checked) {
+            super(read, checked);
+            this.names = names;
+            this.lastModified = lastModified;
+        }
+
+        boolean isUnchanged(long lastModified) {
+            return isUnchanged(lastModified, this.lastModified);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.spi;
+
+import org.jboss.vfs.util.BloomFilter;
+
+/**
+ * An immutable file system which can summarize its entries in a {@link BloomFilter}, so that a lookup across several
+ * roots can skip the file systems which certainly do not contain a path.
+ */
+public interface IndexedFileSystem extends ImmutableFileSystem {
+
+    /**
+     * Get a filter of all the entries of this file system.  The filter holds the path of every file and directory
+     * relative to the mount point, in lower case, separated by {@code '/'} and without leading or trailing separator.
+     *
+     * @return the filter, or {@code null} if none is available
+     */
+    BloomFilter getEntryFilter();
+}
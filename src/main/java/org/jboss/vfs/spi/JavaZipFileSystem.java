@@ -30,21 +30,31 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.CodeSigner;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
 
+import org.jboss.vfs.EntryQuery;
+import org.jboss.vfs.FileAttributes;
 import org.jboss.vfs.TempDir;
 import org.jboss.vfs.VFSUtils;
 import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.util.BloomFilter;
 import org.jboss.vfs.util.PathTokenizer;
 import org.jboss.logging.Logger;
 
@@ -56,16 +66,22 @@ import org.jboss.logging.Logger;
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
-public final class JavaZipFileSystem implements FileSystem {
+public final class JavaZipFileSystem implements AttributedFileSystem, IndexedFileSystem, QueryableFileSystem, TransferableFileSystem {
 
     private static final Logger log = Logger.getLogger("org.jboss.vfs.zip");
 
+    private static final double ENTRY_FILTER_FALSE_POSITIVE_RATE = 0.01;
+
     private final JarFile zipFile;
     private final File archiveFile;
     private final long zipTime;
     private final ZipNode rootNode;
     private final TempDir tempDir;
     private final File contentsDir;
+    private final int nodeCount;
+    private volatile BloomFilter entryFilter;
+    private volatile NameIndex nameIndex;
+    private volatile Map<String, Long> storedEntries;
 
     /**
      * Create a new instance.
@@ -95,7 +111,8 @@ public final class JavaZipFileSystem implements FileSystem {
         this.archiveFile = archiveFile;
         this.tempDir = tempDir;
         final Enumeration<? extends JarEntry> entries = zipFile.entries();
-        final ZipNode rootNode = new ZipNode(new HashMap<String, ZipNode>(), "", null);
+        final ZipNode rootNode = new ZipNode(null, new HashMap<String, ZipNode>(), "", null);
+        int nodeCount = 0;
         FILES:
         for (JarEntry entry : iter(entries)) {
             final String name = entry.getName();
@@ -117,13 +134,15 @@ public final class JavaZipFileSystem implements FileSystem {
                 final String lcToken = token.toLowerCase();
                 ZipNode child = children.get(lcToken);
                 if (child == null) {
-                    child = it.hasNext() || isDirectory ? new ZipNode(new HashMap<String, ZipNode>(), token, null) : new ZipNode(null, token, entry);
+                    child = it.hasNext() || isDirectory ? new ZipNode(node, new HashMap<String, ZipNode>(), token, null) : new ZipNode(node, null, token, entry);
                     children.put(lcToken, child);
+                    nodeCount++;
                 }
                 node = child;
             }
         }
         this.rootNode = rootNode;
+        this.nodeCount = nodeCount;
         contentsDir = tempDir.getFile("contents");
         contentsDir.mkdir();
         log.tracef("Created zip filesystem for file %s in temp dir %s", archiveFile, tempDir);
@@ -181,6 +200,43 @@ public final class JavaZipFileSystem implements FileSystem {
         return zipFile.getInputStream(entry);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Entries which were extracted already are transferred from the extracted copy, and stored (uncompressed) entries
+     * straight from their region of the archive.  Compressed entries cannot be transferred directly, and neither can
+     * the entries of signed archives, since reading them through the archive is what verifies them.
+     */
+    public long transferTo(VirtualFile mountPoint, VirtualFile target, WritableByteChannel channel) throws IOException {
+        final ZipNode zipNode = getExistingZipNode(mountPoint, target);
+        final File cachedFile = zipNode.cachedFile;
+        if (cachedFile != null) {
+            return RealFileSystem.transferTo(cachedFile, channel);
+        }
+        if (rootNode == zipNode) {
+            return RealFileSystem.transferTo(archiveFile, channel);
+        }
+        final JarEntry entry = zipNode.entry;
+        if (entry == null || entry.getMethod() != ZipEntry.STORED) {
+            return -1L;
+        }
+        final Long localHeader = getStoredEntries().get(entry.getName());
+        if (localHeader == null) {
+            return -1L;
+        }
+        final FileChannel source = new FileInputStream(archiveFile).getChannel();
+        try {
+            final long size = entry.getCompressedSize();
+            final long position = ZipCentralDirectory.getDataPosition(source, localHeader.longValue());
+            if (position == -1L || size == -1L || position + size > source.size()) {
+                return -1L;
+            }
+            return RealFileSystem.transfer(source, position, size, channel);
+        } finally {
+            VFSUtils.safeClose(source);
+        }
+    }
+
     /** {@inheritDoc} */
     public boolean delete(VirtualFile mountPoint, VirtualFile target) {
         final ZipNode zipNode = getZipNode(mountPoint, target);
@@ -239,6 +295,26 @@ public final class JavaZipFileSystem implements FileSystem {
         return zipNode != null && zipNode.entry == null;
     }
 
+    /** {@inheritDoc} */
+    public FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final ZipNode zipNode = getZipNode(mountPoint, target);
+        if (zipNode == null) {
+            return FileAttributes.NONEXISTENT;
+        }
+        return getAttributes(zipNode);
+    }
+
+    private FileAttributes getAttributes(ZipNode zipNode) {
+        final File cachedFile = zipNode.cachedFile;
+        if (cachedFile != null && ! cachedFile.exists()) {
+            return FileAttributes.NONEXISTENT;
+        }
+        final JarEntry entry = zipNode.entry;
+        final long size = zipNode == rootNode ? archiveFile.length() : cachedFile != null ? cachedFile.length() : entry == null ? 0L : entry.getSize();
+        final long lastModified = cachedFile != null ? cachedFile.lastModified() : entry == null ? zipTime : entry.getTime();
+        return new FileAttributes(true, entry != null, entry == null, size, lastModified);
+    }
+
     /** {@inheritDoc} */
     public List<String> getDirectoryEntries(VirtualFile mountPoint, VirtualFile target) {
         final ZipNode zipNode = getZipNode(mountPoint, target);
@@ -256,6 +332,24 @@ public final class JavaZipFileSystem implements FileSystem {
         }
         return names;
     }
+
+    /** {@inheritDoc} */
+    public Map<String, FileAttributes> getDirectoryEntryAttributes(VirtualFile mountPoint, VirtualFile target) {
+        final ZipNode zipNode = getZipNode(mountPoint, target);
+        if (zipNode == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, ZipNode> children = zipNode.children;
+        if (children == null) {
+            return Collections.emptyMap();
+        }
+        final Collection<ZipNode> values = children.values();
+        final Map<String, FileAttributes> entries = new LinkedHashMap<String, FileAttributes>(values.size() * 4 / 3 + 1);
+        for (ZipNode node : values) {
+            entries.put(node.name, getAttributes(node));
+        }
+        return entries;
+    }
     
     /**
      * {@inheritDoc}
@@ -269,6 +363,129 @@ public final class JavaZipFileSystem implements FileSystem {
        return jarEntry.getCodeSigners();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The filter is built from the entry tree when first requested, at about ten bits per entry.
+     */
+    public BloomFilter getEntryFilter() {
+        BloomFilter entryFilter = this.entryFilter;
+        if (entryFilter == null) {
+            entryFilter = new BloomFilter(nodeCount, ENTRY_FILTER_FALSE_POSITIVE_RATE);
+            addEntries(entryFilter, rootNode, new StringBuilder());
+            this.entryFilter = entryFilter;
+        }
+        return entryFilter;
+    }
+
+    private static void addEntries(BloomFilter filter, ZipNode node, StringBuilder path) {
+        final int length = path.length();
+        for (Map.Entry<String, ZipNode> entry : node.children.entrySet()) {
+            path.setLength(length);
+            // the keys are the lower case names
+            path.append(entry.getKey());
+            filter.add(path);
+            final ZipNode child = entry.getValue();
+            if (child.children != null) {
+                path.append('/');
+                addEntries(filter, child, path);
+            }
+        }
+        path.setLength(length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Queries which constrain the name suffix are answered from an index built when first needed: suffixes which are
+     * file extensions from a bucket per extension, at a cost proportional to the number of entries with the extension,
+     * and other suffixes from a table of all entries sorted by reversed name.  Other queries walk the entry tree below
+     * the target.
+     */
+    public List<String> findEntries(VirtualFile mountPoint, VirtualFile target, EntryQuery query) {
+        final ZipNode zipNode = getZipNode(mountPoint, target);
+        if (zipNode == null || zipNode.children == null) {
+            return Collections.emptyList();
+        }
+        final List<String> found = new ArrayList<String>();
+        final Set<String> suffixes = query.getNameSuffixes();
+        if (suffixes == null) {
+            findEntries(zipNode, query, new StringBuilder(), found);
+            return found;
+        }
+        final NameIndex nameIndex = getNameIndex();
+        for (String suffix : suffixes) {
+            if (covered(suffix, suffixes)) {
+                // every name ending with this suffix is found under the shorter one
+                continue;
+            }
+            if (isExtension(suffix)) {
+                final ZipNode[] bucket = nameIndex.extensions.get(suffix.substring(1));
+                if (bucket != null) {
+                    for (ZipNode node : bucket) {
+                        addMatch(node, zipNode, query, found);
+                    }
+                }
+                continue;
+            }
+            final String reversed = new StringBuilder(suffix).reverse().toString();
+            final String[] reversedNames = nameIndex.reversedNames;
+            for (int i = nameIndex.find(reversed); i < reversedNames.length && reversedNames[i].startsWith(reversed); i++) {
+                addMatch(nameIndex.nodes[i], zipNode, query, found);
+            }
+        }
+        return found;
+    }
+
+    private static void addMatch(ZipNode node, ZipNode zipNode, EntryQuery query, List<String> found) {
+        if (query.matches(node.name)) {
+            final String path = node.getPathRelativeTo(zipNode);
+            if (path != null) {
+                found.add(path);
+            }
+        }
+    }
+
+    /**
+     * Determine whether a suffix is exactly a file extension, such as {@code ".class"}.
+     */
+    private static boolean isExtension(String suffix) {
+        return suffix.length() > 1 && suffix.lastIndexOf('.') == 0;
+    }
+
+    private static boolean covered(String suffix, Set<String> suffixes) {
+        for (String other : suffixes) {
+            if (other.length() < suffix.length() && suffix.endsWith(other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void findEntries(ZipNode node, EntryQuery query, StringBuilder path, List<String> found) {
+        final int length = path.length();
+        for (ZipNode child : node.children.values()) {
+            path.setLength(length);
+            path.append(child.name);
+            if (query.matches(child.name)) {
+                found.add(path.toString());
+            }
+            if (child.children != null) {
+                path.append('/');
+                findEntries(child, query, path, found);
+            }
+        }
+        path.setLength(length);
+    }
+
+    private NameIndex getNameIndex() {
+        NameIndex nameIndex = this.nameIndex;
+        if (nameIndex == null) {
+            this.nameIndex = nameIndex = new NameIndex(rootNode, nodeCount);
+        }
+        return nameIndex;
+    }
+
     private ZipNode getZipNode(VirtualFile mountPoint, VirtualFile target) {
         return rootNode.find(mountPoint, target);
     }
@@ -303,6 +520,50 @@ public final class JavaZipFileSystem implements FileSystem {
         tempDir.close();
     }
     
+    private Map<String, Long> getStoredEntries() throws IOException {
+        Map<String, Long> storedEntries = this.storedEntries;
+        if (storedEntries == null) {
+            this.storedEntries = storedEntries = readStoredEntries(archiveFile);
+        }
+        return storedEntries;
+    }
+
+    /**
+     * Read the positions of the local headers of the stored entries of an archive from its central directory.  Anything
+     * unexpected, including zip64 archives and signed archives, gives an empty result, so that the entries are read
+     * through the archive instead.
+     *
+     * @param archiveFile the archive
+     * @return the positions of the local headers by entry name
+     * @throws IOException if an I/O error occurs
+     */
+    private static Map<String, Long> readStoredEntries(File archiveFile) throws IOException {
+        final FileChannel channel = new FileInputStream(archiveFile).getChannel();
+        try {
+            final List<ZipCentralDirectory.Entry> entries = ZipCentralDirectory.read(channel);
+            if (entries == null) {
+                return Collections.emptyMap();
+            }
+            final Map<String, Long> storedEntries = new HashMap<String, Long>();
+            for (ZipCentralDirectory.Entry entry : entries) {
+                if (isSignature(entry.getName())) {
+                    return Collections.emptyMap();
+                }
+                if (entry.getMethod() == ZipEntry.STORED) {
+                    storedEntries.put(entry.getName(), Long.valueOf(entry.getLocalHeader()));
+                }
+            }
+            return storedEntries;
+        } finally {
+            VFSUtils.safeClose(channel);
+        }
+    }
+
+    private static boolean isSignature(String name) {
+        final String upperCaseName = name.toUpperCase(Locale.ENGLISH);
+        return upperCaseName.startsWith("META-INF/") && (upperCaseName.endsWith(".SF") || upperCaseName.endsWith(".DSA") || upperCaseName.endsWith(".RSA") || upperCaseName.endsWith(".EC"));
+    }
+
     private File buildFile(File contentsDir, String name) {
        List<String> tokens = PathTokenizer.getTokens(name);
        File currentFile = contentsDir;
@@ -315,13 +576,15 @@ public final class JavaZipFileSystem implements FileSystem {
 
     private static final class ZipNode {
 
+        private final ZipNode parent;
         // immutable child map
         private final Map<String, ZipNode> children;
         private final String name;
         private final JarEntry entry;
         private volatile File cachedFile;
 
-        private ZipNode(Map<String, ZipNode> children, String name, JarEntry entry) {
+        private ZipNode(ZipNode parent, Map<String, ZipNode> children, String name, JarEntry entry) {
+            this.parent = parent;
             this.children = children;
             this.name = name;
             this.entry = entry;
@@ -342,5 +605,118 @@ public final class JavaZipFileSystem implements FileSystem {
                 return children.get(target.getLowerCaseName());
             }
         }
+
+        /**
+         * Get the path of this node relative to an ancestor.
+         *
+         * @param ancestor the ancestor node
+         * @return the relative path, or {@code null} if the node is not below the ancestor
+         */
+        private String getPathRelativeTo(ZipNode ancestor) {
+            if (parent == ancestor) {
+                return name;
+            }
+            int length = name.length();
+            for (ZipNode node = parent; node != ancestor; node = node.parent) {
+                if (node == null) {
+                    return null;
+                }
+                length += node.name.length() + 1;
+            }
+            final char[] path = new char[length];
+            for (ZipNode node = this; node != ancestor; node = node.parent) {
+                length -= node.name.length();
+                node.name.getChars(0, node.name.length(), path, length);
+                if (length > 0) {
+                    path[--length] = '/';
+                }
+            }
+            return new String(path);
+        }
+    }
+
+    /**
+     * All the nodes of the archive sorted by their reversed names, so that the nodes with a given name suffix form a
+     * contiguous range, and grouped by file extension.
+     */
+    private static final class NameIndex {
+        private final String[] reversedNames;
+        private final ZipNode[] nodes;
+        private final Map<String, ZipNode[]> extensions;
+
+        private NameIndex(ZipNode rootNode, int nodeCount) {
+            final List<ZipNode> all = new ArrayList<ZipNode>(nodeCount);
+            collect(rootNode, all);
+            final Map<String, List<ZipNode>> buckets = new HashMap<String, List<ZipNode>>();
+            for (ZipNode node : all) {
+                final int dot = node.name.lastIndexOf('.');
+                if (dot == -1 || dot == node.name.length() - 1) {
+                    continue;
+                }
+                final String extension = node.name.substring(dot + 1);
+                List<ZipNode> bucket = buckets.get(extension);
+                if (bucket == null) {
+                    buckets.put(extension, bucket = new ArrayList<ZipNode>());
+                }
+                bucket.add(node);
+            }
+            extensions = new HashMap<String, ZipNode[]>(buckets.size() * 4 / 3 + 1);
+            for (Map.Entry<String, List<ZipNode>> entry : buckets.entrySet()) {
+                final List<ZipNode> bucket = entry.getValue();
+                extensions.put(entry.getKey(), bucket.toArray(new ZipNode[bucket.size()]));
+            }
+            final NameEntry[] sorted = new NameEntry[all.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                final ZipNode node = all.get(i);
+                sorted[i] = new NameEntry(new StringBuilder(node.name).reverse().toString(), node);
+            }
+            Arrays.sort(sorted);
+            reversedNames = new String[sorted.length];
+            nodes = new ZipNode[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                reversedNames[i] = sorted[i].reversedName;
+                nodes[i] = sorted[i].node;
+            }
+        }
+
+        private static void collect(ZipNode node, List<ZipNode> all) {
+            for (ZipNode child : node.children.values()) {
+                all.add(child);
+                if (child.children != null) {
+                    collect(child, all);
+                }
+            }
+        }
+
+        /**
+         * Find the first position whose reversed name is not less than the given prefix.
+         */
+        private int find(String reversedPrefix) {
+            int low = 0;
+            int high = reversedNames.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (reversedNames[mid].compareTo(reversedPrefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static final class NameEntry implements Comparable<NameEntry> {
+        private final String reversedName;
+        private final ZipNode node;
+
+        private NameEntry(String reversedName, ZipNode node) {
+            this.reversedName = reversedName;
+            this.node = node;
+        }
+
+        public int compareTo(NameEntry o) {
+            return reversedName.compareTo(o.reversedName);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.spi;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.jboss.vfs.EntryQuery;
+import org.jboss.vfs.VirtualFile;
+
+/**
+ * A file system which can search a directory tree for names matching an {@link EntryQuery} by itself, for example from
+ * an index of its entries.
+ */
+public interface QueryableFileSystem extends FileSystem {
+
+    /**
+     * Find the files and directories anywhere below a directory whose names match a query.  Mounts below the
+     * directory are not considered.
+     *
+     * @param mountPoint the mount point of the filesystem instance
+     * @param target the directory to search
+     * @param query the query
+     *
+     * @return the paths of the matching entries relative to the target, separated by {@code '/'}; empty if the target
+     *         is not a directory
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    List<String> findEntries(VirtualFile mountPoint, VirtualFile target, EntryQuery query) throws IOException;
+}
@@ -22,6 +22,9 @@
 
 package org.jboss.vfs.spi;
 
+import org.jboss.vfs.EntryQuery;
+import org.jboss.vfs.FileAttributes;
+import org.jboss.vfs.VFSUtils;
 import org.jboss.vfs.VirtualFile;
 import org.jboss.logging.Logger;
 
@@ -29,8 +32,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.FileInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.CodeSigner;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Arrays;
 import java.util.Collections;
 
@@ -39,7 +46,7 @@ import java.util.Collections;
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
-public final class RealFileSystem implements FileSystem {
+public final class RealFileSystem implements AttributedFileSystem, QueryableFileSystem, TransferableFileSystem {
 
     private static final Logger log = Logger.getLogger("org.jboss.vfs.real");
 
@@ -129,6 +136,13 @@ public final class RealFileSystem implements FileSystem {
         return getFile(mountPoint, target).isDirectory();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        return FileAttributes.of(getFile(mountPoint, target));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -137,6 +151,106 @@ public final class RealFileSystem implements FileSystem {
         return names == null ? Collections.<String>emptyList() : Arrays.asList(names);
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, FileAttributes> getDirectoryEntryAttributes(VirtualFile mountPoint, VirtualFile target) {
+        return FileAttributes.ofEntries(getFile(mountPoint, target));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<String> findEntries(VirtualFile mountPoint, VirtualFile target, EntryQuery query) {
+        return findEntries(getFile(mountPoint, target), query);
+    }
+
+    /**
+     * Search a real directory tree.  Each entry costs one file system call to find out whether to descend into it,
+     * and no virtual files are created along the way.
+     *
+     * @param directory the directory
+     * @param query the query
+     * @return the relative paths of the matching entries
+     */
+    static List<String> findEntries(File directory, EntryQuery query) {
+        final List<String> found = new ArrayList<String>();
+        findEntries(directory, query, new StringBuilder(), found);
+        return found;
+    }
+
+    private static void findEntries(File directory, EntryQuery query, StringBuilder path, List<String> found) {
+        final String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+        final int length = path.length();
+        for (String name : names) {
+            path.setLength(length);
+            path.append(name);
+            if (query.matches(name)) {
+                found.add(path.toString());
+            }
+            final File file = new File(directory, name);
+            if (file.isDirectory()) {
+                path.append('/');
+                findEntries(file, query, path, found);
+            }
+        }
+        path.setLength(length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long transferTo(VirtualFile mountPoint, VirtualFile target, WritableByteChannel channel) throws IOException {
+        return transferTo(getFile(mountPoint, target), channel);
+    }
+
+    /**
+     * Write a real file to a channel with {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+     *
+     * @param file the file
+     * @param channel the channel to write to
+     * @return the number of bytes written, or -1 if the file is not a plain file
+     * @throws IOException if an I/O error occurs
+     */
+    static long transferTo(File file, WritableByteChannel channel) throws IOException {
+        if (! file.isFile()) {
+            return -1L;
+        }
+        final FileChannel source = new FileInputStream(file).getChannel();
+        try {
+            return transfer(source, 0L, source.size(), channel);
+        } finally {
+            VFSUtils.safeClose(source);
+        }
+    }
+
+    /**
+     * Write a region of a file channel to another channel.  The position of the source channel is not used, so the
+     * source may be shared.
+     *
+     * @param source the channel to read from
+     * @param position the position of the region
+     * @param count the size of the region
+     * @param channel the channel to write to
+     * @return the number of bytes written, which is less than {@code count} only if the source ended early or the
+     *         target is not in blocking mode
+     * @throws IOException if an I/O error occurs
+     */
+    static long transfer(FileChannel source, long position, long count, WritableByteChannel channel) throws IOException {
+        long transferred = 0L;
+        while (transferred < count) {
+            final long n = source.transferTo(position + transferred, count - transferred, channel);
+            if (n <= 0L) {
+                break;
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+
     /**
      * {@inheritDoc}
      */
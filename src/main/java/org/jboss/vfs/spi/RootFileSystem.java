@@ -22,6 +22,8 @@
 
 package org.jboss.vfs.spi;
 
+import org.jboss.vfs.EntryQuery;
+import org.jboss.vfs.FileAttributes;
 import org.jboss.vfs.VirtualFile;
 import org.jboss.logging.Logger;
 
@@ -29,8 +31,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.FileInputStream;
+import java.nio.channels.WritableByteChannel;
 import java.security.CodeSigner;
 import java.util.List;
+import java.util.Map;
 import java.util.Arrays;
 import java.util.Collections;
 
@@ -38,9 +42,11 @@ import java.util.Collections;
  * A special FileSystem which supports multiple roots.
  * 
  * This is currently accomplished by requiring that VirtualFile.getPathName()
- * produce output that is consumable by java.io.File as a path.
+ * produce output that is consumable by java.io.File as a path.  The file for
+ * each virtual file is kept by {@link VirtualFile#getPathFile()}, so lookups
+ * which land on the root mount neither rebuild nor reparse the path.
  */
-public final class RootFileSystem implements FileSystem {
+public final class RootFileSystem implements AttributedFileSystem, QueryableFileSystem, TransferableFileSystem {
 
     private static final Logger log = Logger.getLogger("org.jboss.vfs.root");
     
@@ -66,7 +72,7 @@ public final class RootFileSystem implements FileSystem {
      * {@inheritDoc}
      */
     public File getFile(VirtualFile mountPoint, VirtualFile target) {
-        return new File(target.getPathName());
+        return target.getPathFile();
     }
 
     /**
@@ -109,6 +115,13 @@ public final class RootFileSystem implements FileSystem {
         return getFile(mountPoint, target).isDirectory();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public FileAttributes getAttributes(VirtualFile mountPoint, VirtualFile target) {
+        return FileAttributes.of(getFile(mountPoint, target));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -117,6 +130,27 @@ public final class RootFileSystem implements FileSystem {
         return names == null ? Collections.<String>emptyList() : Arrays.asList(names);
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, FileAttributes> getDirectoryEntryAttributes(VirtualFile mountPoint, VirtualFile target) {
+        return FileAttributes.ofEntries(getFile(mountPoint, target));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<String> findEntries(VirtualFile mountPoint, VirtualFile target, EntryQuery query) {
+        return RealFileSystem.findEntries(getFile(mountPoint, target), query);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long transferTo(VirtualFile mountPoint, VirtualFile target, WritableByteChannel channel) throws IOException {
+        return RealFileSystem.transferTo(getFile(mountPoint, target), channel);
+    }
+
     /**
      * {@inheritDoc}
      */
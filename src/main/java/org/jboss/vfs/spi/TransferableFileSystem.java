@@ -0,0 +1,52 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.spi;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+import org.jboss.vfs.VirtualFile;
+
+/**
+ * A file system which can write the contents of its files to a channel without copying them through a heap buffer,
+ * typically with {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)}, which the
+ * operating system may carry out without copying the data into user space at all.
+ *
+ * @see VirtualFile#transferTo(WritableByteChannel)
+ */
+public interface TransferableFileSystem extends FileSystem {
+
+    /**
+     * Write the contents of a file to a channel, if this file system can do so directly.  The channel should be in
+     * blocking mode; fewer bytes than the size of the file are written if it is not, or if the file shrinks meanwhile.
+     *
+     * @param mountPoint the mount point of the filesystem instance (guaranteed to be a parent of {@code target})
+     * @param target the file to transfer
+     * @param channel the channel to write to
+     *
+     * @return the number of bytes written, or -1 if this file cannot be transferred directly, in which case nothing has
+     *         been written
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    long transferTo(VirtualFile mountPoint, VirtualFile target, WritableByteChannel channel) throws IOException;
+}
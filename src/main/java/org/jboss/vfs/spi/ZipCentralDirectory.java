@@ -0,0 +1,253 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.spi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A reader for the central directory of a zip archive, which {@code java.util.zip} does not expose, and for the local
+ * headers it points to.  This gives the methods, sizes and data positions of the entries, so that they can be read
+ * straight from the archive with positional reads.  It is meant for the file systems and utilities of this library
+ * rather than for general use.
+ * <p/>
+ * Only plain archives are read: anything unexpected, including zip64 archives, gives no result, so that callers can
+ * fall back to {@code java.util.zip}.
+ */
+public final class ZipCentralDirectory {
+
+    /**
+     * The signature of a local file header.
+     */
+    public static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    /**
+     * The size of the fixed part of a local file header.
+     */
+    public static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+
+    private ZipCentralDirectory() {
+    }
+
+    /**
+     * Read the entries of an archive from its central directory.
+     *
+     * @param channel the archive
+     * @return the entries in archive order, or {@code null} if the archive has no valid central directory or is a
+     *         zip64 archive
+     * @throws IOException if an I/O error occurs
+     */
+    public static List<Entry> read(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        final int tailSize = (int) Math.min(size, END_HEADER_SIZE + 0xFFFF);
+        final ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        if (! readFully(channel, tail, size - tailSize)) {
+            return null;
+        }
+        int end = tailSize - END_HEADER_SIZE;
+        while (end >= 0 && tail.getInt(end) != END_SIGNATURE) {
+            end--;
+        }
+        if (end < 0) {
+            return null;
+        }
+        final int count = tail.getShort(end + 10) & 0xFFFF;
+        final long centralSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        final long centralOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        final long centralPosition = size - tailSize + end - centralSize;
+        if (count == 0xFFFF || centralOffset == 0xFFFFFFFFL || centralSize > Integer.MAX_VALUE || centralPosition < 0L) {
+            return null;
+        }
+        // data in front of the archive (as in self-extracting archives) shifts all the recorded offsets
+        final long shift = centralPosition - centralOffset;
+        final ByteBuffer central = ByteBuffer.allocate((int) centralSize).order(ByteOrder.LITTLE_ENDIAN);
+        if (! readFully(channel, central, centralPosition)) {
+            return null;
+        }
+        final List<Entry> entries = new ArrayList<Entry>(count);
+        int header = 0;
+        while (header + CENTRAL_HEADER_SIZE <= centralSize && central.getInt(header) == CENTRAL_SIGNATURE) {
+            final int flags = central.getShort(header + 8) & 0xFFFF;
+            final int method = central.getShort(header + 10) & 0xFFFF;
+            final long compressedSize = central.getInt(header + 20) & 0xFFFFFFFFL;
+            final long uncompressedSize = central.getInt(header + 24) & 0xFFFFFFFFL;
+            final int nameLength = central.getShort(header + 28) & 0xFFFF;
+            final int extraLength = central.getShort(header + 30) & 0xFFFF;
+            final int commentLength = central.getShort(header + 32) & 0xFFFF;
+            final long localHeader = central.getInt(header + 42) & 0xFFFFFFFFL;
+            if (header + CENTRAL_HEADER_SIZE + nameLength > centralSize) {
+                return null;
+            }
+            if (compressedSize == 0xFFFFFFFFL || uncompressedSize == 0xFFFFFFFFL || localHeader == 0xFFFFFFFFL) {
+                return null;
+            }
+            final String name = new String(central.array(), header + CENTRAL_HEADER_SIZE, nameLength, "UTF-8");
+            entries.add(new Entry(name, flags, method, compressedSize, uncompressedSize, localHeader + shift, nameLength + extraLength));
+            header += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries.size() == count ? entries : null;
+    }
+
+    /**
+     * Get the length of a local header, whose variable part may differ from the central directory.
+     *
+     * @param header a little-endian buffer holding at least the fixed part of the header from position 0
+     * @return the length of the header, which is where the data starts, or -1 if this is not a local header
+     */
+    public static int getLocalHeaderLength(ByteBuffer header) {
+        if (header.limit() < LOCAL_HEADER_SIZE || header.getInt(0) != LOCAL_SIGNATURE) {
+            return -1;
+        }
+        return LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+    }
+
+    /**
+     * Find the start of the data of an entry from its local header.
+     *
+     * @param channel the archive
+     * @param localHeader the position of the local header
+     * @return the position of the data, or -1 if there is no valid local header there
+     * @throws IOException if an I/O error occurs
+     */
+    public static long getDataPosition(FileChannel channel, long localHeader) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (localHeader < 0L || ! readFully(channel, header, localHeader)) {
+            return -1L;
+        }
+        final int length = getLocalHeaderLength(header);
+        return length == -1 ? -1L : localHeader + length;
+    }
+
+    /**
+     * Fill a buffer from its current position, reading the channel from the given position onwards.
+     *
+     * @param channel the channel
+     * @param buffer the buffer
+     * @param position the position in the channel of the start of the buffer
+     * @return {@code true} if the buffer was filled, {@code false} if the end of the channel was reached first
+     * @throws IOException if an I/O error occurs
+     */
+    public static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An entry of the central directory.
+     */
+    public static final class Entry {
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeader;
+        private final int nameAndExtraLength;
+
+        Entry(String name, int flags, int method, long compressedSize, long size, long localHeader, int nameAndExtraLength) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeader = localHeader;
+            this.nameAndExtraLength = nameAndExtraLength;
+        }
+
+        /**
+         * Get the name of the entry.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the general purpose flags of the entry.
+         *
+         * @return the flags
+         */
+        public int getFlags() {
+            return flags;
+        }
+
+        /**
+         * Get the compression method of the entry.
+         *
+         * @return the method, such as {@link java.util.zip.ZipEntry#STORED} or {@link java.util.zip.ZipEntry#DEFLATED}
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * Get the size of the data of the entry in the archive.
+         *
+         * @return the compressed size, in bytes
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * Get the size of the contents of the entry.
+         *
+         * @return the uncompressed size, in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Get the position of the local header of the entry, corrected for any data in front of the archive.
+         *
+         * @return the position
+         */
+        public long getLocalHeader() {
+            return localHeader;
+        }
+
+        /**
+         * Get the length of the name and extra field of the entry in the central directory.  These are usually the
+         * same in the local header, which therefore usually takes {@link #LOCAL_HEADER_SIZE} more bytes.
+         *
+         * @return the length, in bytes
+         */
+        public int getNameAndExtraLength() {
+            return nameAndExtraLength;
+        }
+    }
+}
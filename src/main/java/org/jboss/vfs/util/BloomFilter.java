@@ -0,0 +1,224 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A Bloom filter over strings, used to rule out paths which are definitely not present without consulting the actual
+ * index.  A filter never answers {@code false} for a string which was added; it answers {@code true} for a string which
+ * was not added with roughly the false positive probability it was sized for.  At a 1% false positive rate a filter
+ * takes about ten bits per string.
+ * <p/>
+ * Filters can be written to and read from a stream, for example to keep one alongside an archive so that the archive
+ * can be ruled out without opening it.  Adding is not thread-safe; querying a filter which is no longer modified is.
+ */
+public final class BloomFilter {
+
+    private static final int MAGIC = 0x56465342; // "VFSB"
+    private static final int VERSION = 1;
+
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Create a new, empty filter.
+     *
+     * @param expectedSize the number of strings expected to be added
+     * @param falsePositiveRate the desired false positive probability, between 0 and 1 exclusive
+     *
+     * @throws IllegalArgumentException if the expected size is negative or the rate is out of range
+     */
+    public BloomFilter(int expectedSize, double falsePositiveRate) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Negative expected size");
+        if (! (falsePositiveRate > 0.0 && falsePositiveRate < 1.0))
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        final int n = Math.max(expectedSize, 1);
+        final double ln2 = Math.log(2.0);
+        final long bits = Math.max(64L, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        words = new long[(int) ((bits + 63L) >>> 6)];
+        bitCount = (long) words.length << 6;
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / n * ln2));
+    }
+
+    private BloomFilter(long[] words, int hashCount) {
+        this.words = words;
+        bitCount = (long) words.length << 6;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Add a string to this filter.
+     *
+     * @param value the string
+     */
+    public void add(CharSequence value) {
+        add(value, null);
+    }
+
+    /**
+     * Add the concatenation of two strings to this filter, without building the concatenated string.
+     *
+     * @param prefix the first part
+     * @param value the second part, or {@code null}
+     */
+    public void add(CharSequence prefix, CharSequence value) {
+        final long hash = hash(prefix, value);
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = ((h1 + i * h2) & 0x7fffffffL) % bitCount;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Determine whether the given string might have been added to this filter.
+     *
+     * @param value the string
+     *
+     * @return {@code false} if the string was definitely not added
+     */
+    public boolean mightContain(CharSequence value) {
+        return mightContain(value, null);
+    }
+
+    /**
+     * Determine whether the concatenation of two strings might have been added to this filter, without building the
+     * concatenated string.
+     *
+     * @param prefix the first part
+     * @param value the second part, or {@code null}
+     *
+     * @return {@code false} if the concatenation was definitely not added
+     */
+    public boolean mightContain(CharSequence prefix, CharSequence value) {
+        final long hash = hash(prefix, value);
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = ((h1 + i * h2) & 0x7fffffffL) % bitCount;
+            if ((words[(int) (bit >>> 6)] & 1L << bit) == 0L)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the size of this filter.
+     *
+     * @return the number of bits
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Get the number of hash functions this filter uses.
+     *
+     * @return the number of hash functions
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Write this filter to a stream.  The stream is not closed.
+     *
+     * @param os the output stream
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream os) throws IOException {
+        final DataOutputStream dos = new DataOutputStream(os);
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(hashCount);
+        dos.writeInt(words.length);
+        for (long word : words)
+            dos.writeLong(word);
+        dos.flush();
+    }
+
+    /**
+     * Read a filter written by {@link #writeTo(OutputStream)}.  The stream is not closed.
+     *
+     * @param is the input stream
+     *
+     * @return the filter
+     *
+     * @throws IOException if an I/O error occurs or the stream does not hold a filter
+     */
+    public static BloomFilter readFrom(InputStream is) throws IOException {
+        final DataInputStream dis = new DataInputStream(is);
+        if (dis.readInt() != MAGIC)
+            throw new IOException("Not a bloom filter");
+        final int version = dis.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported bloom filter version " + version);
+        final int hashCount = dis.readInt();
+        final int length = dis.readInt();
+        if (hashCount < 1 || length < 1)
+            throw new IOException("Corrupt bloom filter");
+        final long[] words = new long[length];
+        for (int i = 0; i < length; i++)
+            words[i] = dis.readLong();
+        return new BloomFilter(words, hashCount);
+    }
+
+    /**
+     * Compute two independent 32 bit hashes, a multiplicative one and FNV-1a, each finished with the MurmurHash3
+     * mixer.
+     */
+    private static long hash(CharSequence prefix, CharSequence value) {
+        int h1 = 0;
+        int h2 = 0x811c9dc5;
+        for (int i = 0, length = prefix.length(); i < length; i++) {
+            final char c = prefix.charAt(i);
+            h1 = 31 * h1 + c;
+            h2 = (h2 ^ c) * 0x01000193;
+        }
+        if (value != null) {
+            for (int i = 0, length = value.length(); i < length; i++) {
+                final char c = value.charAt(i);
+                h1 = 31 * h1 + c;
+                h2 = (h2 ^ c) * 0x01000193;
+            }
+        }
+        return (mix(h1) & 0xffffffffL) | (long) (mix(h2) | 1) << 32;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.util;
+
+import java.nio.ByteBuffer;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.vfs.VFSUtils;
+
+/**
+ * A pool of I/O buffers of one size, so that copies do not each allocate and drop a large buffer.
+ * <p/>
+ * The pool is a fixed number of slots, each holding at most one buffer, and a thread starts looking for a buffer at
+ * the slot picked by its id.  Taking and releasing a buffer is a single atomic operation in the common case, and the
+ * pool never holds more buffers than it has slots.  There are no thread locals, which would keep the classes of this
+ * library reachable from long-lived container threads.  A buffer which is never released is simply garbage collected,
+ * so callers need not release buffers on every error path; a buffer must not be used any more once it is released,
+ * though, nor released twice.
+ * <p/>
+ * The default pool, used by the copy methods of {@link VFSUtils}, holds heap buffers of {@link
+ * VFSUtils#DEFAULT_BUFFER_SIZE} bytes, in {@code jboss.vfs.bufferPoolSlots} slots (twice the number of processors by
+ * default).
+ */
+public final class BufferPool {
+
+    private static final BufferPool DEFAULT = new BufferPool(VFSUtils.DEFAULT_BUFFER_SIZE, AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+        public Integer run() {
+            return Integer.getInteger("jboss.vfs.bufferPoolSlots", Runtime.getRuntime().availableProcessors() * 2);
+        }
+    }).intValue(), false);
+
+    private static final int PROBES = 2;
+
+    private final int bufferSize;
+    private final boolean direct;
+    private final AtomicReferenceArray<ByteBuffer> slots;
+    private final int mask;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param bufferSize the size of the buffers, in bytes
+     * @param slots the maximum number of buffers to keep, rounded up to a power of two; 0 to keep none
+     * @param direct {@code true} to pool direct buffers, {@code false} to pool heap buffers
+     *
+     * @throws IllegalArgumentException if the size is not positive or the number of slots is negative
+     */
+    public BufferPool(int bufferSize, int slots, boolean direct) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be positive");
+        if (slots < 0)
+            throw new IllegalArgumentException("slots must not be negative");
+        int size = 1;
+        while (size < slots) {
+            size <<= 1;
+        }
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.slots = new AtomicReferenceArray<ByteBuffer>(slots == 0 ? 0 : size);
+        mask = size - 1;
+    }
+
+    /**
+     * Get the default pool, of heap buffers of {@link VFSUtils#DEFAULT_BUFFER_SIZE} bytes.
+     *
+     * @return the default pool
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Take a buffer from the pool, or allocate a new one if none is available.  For pools of heap buffers, the whole
+     * {@linkplain ByteBuffer#array() backing array} is available to the caller.
+     *
+     * @return a cleared buffer of {@link #getBufferSize()} bytes
+     */
+    public ByteBuffer take() {
+        final AtomicReferenceArray<ByteBuffer> slots = this.slots;
+        if (slots.length() > 0) {
+            int index = (int) Thread.currentThread().getId() & mask;
+            for (int i = 0; i < PROBES; i++) {
+                final ByteBuffer buffer = slots.getAndSet(index, null);
+                if (buffer != null) {
+                    buffer.clear();
+                    return buffer;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Return a buffer to the pool.  Buffers which do not come from a pool like this one are ignored; so is the buffer if
+     * the pool is full.  A buffer must be released at most once per {@link #take()}: releasing it twice may put it in
+     * the pool twice, and then hand it to two users at once.
+     *
+     * @param buffer the buffer, or {@code null} to do nothing
+     */
+    public void release(ByteBuffer buffer) {
+        final AtomicReferenceArray<ByteBuffer> slots = this.slots;
+        if (buffer == null || buffer.capacity() != bufferSize || buffer.isDirect() != direct || buffer.isReadOnly() || slots.length() == 0) {
+            return;
+        }
+        int index = (int) Thread.currentThread().getId() & mask;
+        for (int i = 0; i < PROBES; i++) {
+            if (slots.compareAndSet(index, null, buffer)) {
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Get the size of the buffers of this pool.
+     *
+     * @return the size, in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Determine whether this pool holds direct buffers.
+     *
+     * @return {@code true} for direct buffers, {@code false} for heap buffers
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+}
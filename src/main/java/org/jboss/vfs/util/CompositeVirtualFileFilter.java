@@ -0,0 +1,345 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.jboss.vfs.EntryQuery;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualFileFilter;
+import org.jboss.vfs.VirtualFileFilterWithQuery;
+
+/**
+ * A combination of filters with AND, OR and NOT, compiled into a single matcher when it is created.
+ * <ul>
+ * <li>Nested combinations of the same kind are flattened, and the operands of each combination are reordered so that
+ * the cheap checks come first: name queries, then other checks of the name, then checks of the path, then any other
+ * filter.  Evaluation stops as soon as the outcome is known.</li>
+ * <li>The name and, for {@link FileNameVirtualFileFilter}, the path name of a file are computed at most once per file,
+ * however many operands look at them.</li>
+ * <li>Any part of the combination which consists of {@link SuffixMatchFilter}, {@link SuffixesExcludeFilter}, {@link
+ * IncludeFileNameVirtualFileFilter} or {@link EntryQuery} filters is turned into a single {@link EntryQuery}.  The
+ * query describing the whole combination is returned by {@link #getQuery()}, so that file systems can find the
+ * candidates from their indexes; see {@link VirtualFileFilterWithQuery}.</li>
+ * </ul>
+ * The operands must not change what they accept once they are combined.  Instances are immutable, and thread-safe if
+ * the operands are.
+ */
+public final class CompositeVirtualFileFilter implements VirtualFileFilterWithQuery {
+
+    private static final Class<?> QUERY_FILTER_CLASS = EntryQuery.ALL.asFilter().getClass();
+
+    private static final int COST_QUERY = 0;
+    private static final int COST_NAME = 1;
+    private static final int COST_PATH = 2;
+    private static final int COST_OTHER = 3;
+
+    private final Node root;
+
+    private CompositeVirtualFileFilter(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Get a filter which accepts the files which all of the given filters accept.
+     *
+     * @param filters the filters
+     *
+     * @return the combined filter
+     *
+     * @throws IllegalArgumentException if the filters are null or contain null
+     */
+    public static CompositeVirtualFileFilter and(VirtualFileFilter... filters) {
+        return new CompositeVirtualFileFilter(combine(true, filters));
+    }
+
+    /**
+     * Get a filter which accepts the files which any of the given filters accepts.
+     *
+     * @param filters the filters
+     *
+     * @return the combined filter
+     *
+     * @throws IllegalArgumentException if the filters are null or contain null
+     */
+    public static CompositeVirtualFileFilter or(VirtualFileFilter... filters) {
+        return new CompositeVirtualFileFilter(combine(false, filters));
+    }
+
+    /**
+     * Get a filter which accepts the files which the given filter does not accept.
+     *
+     * @param filter the filter
+     *
+     * @return the negated filter
+     *
+     * @throws IllegalArgumentException if the filter is null
+     */
+    public static CompositeVirtualFileFilter not(VirtualFileFilter filter) {
+        if (filter == null)
+            throw new IllegalArgumentException("Null filter");
+        final Node operand = compile(filter);
+        if (operand.query != null)
+            return new CompositeVirtualFileFilter(new QueryNode(EntryQuery.not(operand.query)));
+        return new CompositeVirtualFileFilter(new NotNode(operand));
+    }
+
+    public boolean accepts(VirtualFile file) {
+        return root.matches(new Candidate(file));
+    }
+
+    /**
+     * Get a query which matches at least the files this filter accepts.  It matches exactly those files if every
+     * operand is a name query.
+     *
+     * @return the query, or {@code null} if the combination puts no restriction on names which a query can express
+     */
+    public EntryQuery getQuery() {
+        return root.candidates;
+    }
+
+    public String toString() {
+        return root.toString();
+    }
+
+    private static Node combine(boolean and, VirtualFileFilter[] filters) {
+        if (filters == null)
+            throw new IllegalArgumentException("Null filters");
+        final List<Node> operands = new ArrayList<Node>(filters.length);
+        for (VirtualFileFilter filter : filters) {
+            if (filter == null)
+                throw new IllegalArgumentException("Null filter");
+            final Node operand = compile(filter);
+            if (operand instanceof CombinedNode && ((CombinedNode) operand).and == and) {
+                for (Node nested : ((CombinedNode) operand).operands)
+                    operands.add(nested);
+            } else {
+                operands.add(operand);
+            }
+        }
+        // all the name queries are merged into one
+        final List<EntryQuery> queries = new ArrayList<EntryQuery>();
+        final List<Node> others = new ArrayList<Node>();
+        for (Node operand : operands) {
+            if (operand.query != null)
+                queries.add(operand.query);
+            else
+                others.add(operand);
+        }
+        EntryQuery query = null;
+        if (queries.size() == 1)
+            query = queries.get(0);
+        else if (queries.size() > 1)
+            query = and ? EntryQuery.and(queries.toArray(new EntryQuery[queries.size()])) : EntryQuery.or(queries.toArray(new EntryQuery[queries.size()]));
+        if (others.isEmpty())
+            return new QueryNode(query == null ? (and ? EntryQuery.ALL : EntryQuery.or()) : query);
+        if (query != null)
+            others.add(0, new QueryNode(query));
+        Collections.sort(others, new Comparator<Node>() {
+            public int compare(Node o1, Node o2) {
+                return o1.cost - o2.cost;
+            }
+        });
+        return new CombinedNode(and, others.toArray(new Node[others.size()]));
+    }
+
+    private static Node compile(VirtualFileFilter filter) {
+        if (filter instanceof CompositeVirtualFileFilter)
+            return ((CompositeVirtualFileFilter) filter).root;
+        final Class<?> filterClass = filter.getClass();
+        if (filterClass == SuffixMatchFilter.class || filterClass == SuffixesExcludeFilter.class || filterClass == IncludeFileNameVirtualFileFilter.class || filterClass == QUERY_FILTER_CLASS)
+            return new QueryNode(((VirtualFileFilterWithQuery) filter).getQuery());
+        if (filter == MatchAllVirtualFileFilter.INSTANCE)
+            return new QueryNode(EntryQuery.ALL);
+        if (filterClass == ExtensibleFilter.class)
+            return new ExtensibleNode((ExtensibleFilter) filter);
+        if (filterClass == FileNameVirtualFileFilter.class)
+            return new FileNameNode((FileNameVirtualFileFilter) filter);
+        return new FilterNode(filter);
+    }
+
+    /**
+     * A file under test, with the strings derived from it computed on demand.
+     */
+    private static final class Candidate {
+        private final VirtualFile file;
+        private String uriPathName;
+
+        Candidate(VirtualFile file) {
+            this.file = file;
+        }
+
+        String getUriPathName(FileNameVirtualFileFilter filter) {
+            String uriPathName = this.uriPathName;
+            if (uriPathName == null)
+                this.uriPathName = uriPathName = filter.getPathName(file);
+            return uriPathName;
+        }
+    }
+
+    private abstract static class Node {
+        /** The query equivalent to this node, if any */
+        final EntryQuery query;
+        /** A query matching at least what this node matches, if any */
+        final EntryQuery candidates;
+        final int cost;
+
+        Node(EntryQuery query, EntryQuery candidates, int cost) {
+            this.query = query;
+            this.candidates = candidates;
+            this.cost = cost;
+        }
+
+        abstract boolean matches(Candidate candidate);
+    }
+
+    private static final class QueryNode extends Node {
+        QueryNode(EntryQuery query) {
+            super(query, query == EntryQuery.ALL ? null : query, COST_QUERY);
+        }
+
+        boolean matches(Candidate candidate) {
+            return query.matches(candidate.file.getName());
+        }
+
+        public String toString() {
+            return query.toString();
+        }
+    }
+
+    private static final class ExtensibleNode extends Node {
+        private final ExtensibleFilter filter;
+
+        ExtensibleNode(ExtensibleFilter filter) {
+            super(null, null, COST_NAME);
+            this.filter = filter;
+        }
+
+        boolean matches(Candidate candidate) {
+            return filter.acceptsName(candidate.file.getName());
+        }
+
+        public String toString() {
+            return "extensible filter";
+        }
+    }
+
+    private static final class FileNameNode extends Node {
+        private final FileNameVirtualFileFilter filter;
+
+        FileNameNode(FileNameVirtualFileFilter filter) {
+            super(null, null, COST_PATH);
+            this.filter = filter;
+        }
+
+        boolean matches(Candidate candidate) {
+            return filter.accepts(candidate.file, candidate.getUriPathName(filter));
+        }
+
+        public String toString() {
+            return "file name filter";
+        }
+    }
+
+    private static final class FilterNode extends Node {
+        private final VirtualFileFilter filter;
+
+        FilterNode(VirtualFileFilter filter) {
+            super(null, filter instanceof VirtualFileFilterWithQuery ? ((VirtualFileFilterWithQuery) filter).getQuery() : null, COST_OTHER);
+            this.filter = filter;
+        }
+
+        boolean matches(Candidate candidate) {
+            return filter.accepts(candidate.file);
+        }
+
+        public String toString() {
+            return filter.toString();
+        }
+    }
+
+    private static final class NotNode extends Node {
+        private final Node operand;
+
+        NotNode(Node operand) {
+            super(null, null, operand.cost);
+            this.operand = operand;
+        }
+
+        boolean matches(Candidate candidate) {
+            return ! operand.matches(candidate);
+        }
+
+        public String toString() {
+            return "not " + operand;
+        }
+    }
+
+    private static final class CombinedNode extends Node {
+        private final boolean and;
+        private final Node[] operands;
+
+        CombinedNode(boolean and, Node[] operands) {
+            super(null, candidates(and, operands), operands[operands.length - 1].cost);
+            this.and = and;
+            this.operands = operands;
+        }
+
+        private static EntryQuery candidates(boolean and, Node[] operands) {
+            final List<EntryQuery> queries = new ArrayList<EntryQuery>(operands.length);
+            for (Node operand : operands) {
+                if (operand.candidates != null)
+                    queries.add(operand.candidates);
+                else if (! and)
+                    // anything may match this operand
+                    return null;
+            }
+            if (queries.isEmpty())
+                return null;
+            if (queries.size() == 1)
+                return queries.get(0);
+            final EntryQuery[] array = queries.toArray(new EntryQuery[queries.size()]);
+            return and ? EntryQuery.and(array) : EntryQuery.or(array);
+        }
+
+        boolean matches(Candidate candidate) {
+            for (Node operand : operands) {
+                if (operand.matches(candidate) != and)
+                    return ! and;
+            }
+            return and;
+        }
+
+        public String toString() {
+            final StringBuilder builder = new StringBuilder("(");
+            for (int i = 0; i < operands.length; i++) {
+                if (i > 0)
+                    builder.append(and ? " and " : " or ");
+                builder.append(operands[i]);
+            }
+            return builder.append(')').toString();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.jboss.vfs.ConcurrentVirtualFileVisitor;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualFileFilter;
+import org.jboss.vfs.VirtualFileFilterWithAttributes;
+import org.jboss.vfs.VisitorAttributes;
+
+/**
+ * A thread-safe visitor based on a virtual file filter; the concurrent counterpart of {@link
+ * FilterVirtualFileVisitor}.  The filter itself must be thread-safe.
+ */
+public class ConcurrentFilterVirtualFileVisitor extends AbstractVirtualFileVisitor implements ConcurrentVirtualFileVisitor {
+
+    /**
+     * The filter
+     */
+    private final VirtualFileFilter filter;
+
+    /**
+     * What is matched
+     */
+    private final Queue<VirtualFile> matched = new ConcurrentLinkedQueue<VirtualFile>();
+
+    private static VisitorAttributes checkAttributes(VirtualFileFilter filter, VisitorAttributes attributes) {
+        if (filter == null)
+            throw new IllegalArgumentException("Null filter");
+        if (attributes != null)
+            return attributes;
+        if (filter instanceof VirtualFileFilterWithAttributes)
+            return ((VirtualFileFilterWithAttributes) filter).getAttributes();
+        return null;
+    }
+
+    /**
+     * Create a new ConcurrentFilterVirtualFileVisitor with default attributes
+     *
+     * @param filter the filter
+     *
+     * @throws IllegalArgumentException if the filter is null
+     */
+    public ConcurrentFilterVirtualFileVisitor(VirtualFileFilter filter) {
+        this(filter, null);
+    }
+
+    /**
+     * Create a new ConcurrentFilterVirtualFileVisitor.
+     *
+     * @param filter the filter
+     * @param attributes the attributes, uses the default if null
+     *
+     * @throws IllegalArgumentException if the filter is null
+     */
+    public ConcurrentFilterVirtualFileVisitor(VirtualFileFilter filter, VisitorAttributes attributes) {
+        super(checkAttributes(filter, attributes));
+        this.filter = filter;
+    }
+
+    /**
+     * Get a snapshot of the files matched so far, in no particular order.
+     *
+     * @return the matched files
+     */
+    public List<VirtualFile> getMatched() {
+        return new ArrayList<VirtualFile>(matched);
+    }
+
+    public void visit(VirtualFile virtualFile) {
+        if (filter.accepts(virtualFile))
+            matched.add(virtualFile);
+    }
+}
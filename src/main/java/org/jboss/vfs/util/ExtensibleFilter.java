@@ -24,8 +24,13 @@ package org.jboss.vfs.util;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.jboss.vfs.VirtualFile;
 import org.jboss.vfs.VirtualFileFilter;
@@ -36,6 +41,10 @@ import org.jboss.vfs.VirtualFileFilter;
  * then the accepts method will return false.
  * <p/>
  * NOTE: the arrays *must* be sorted for the string matching to work, and suffixes use the 'reverseComparator'
+ * <p/>
+ * The lists are compiled into a prefix trie, a trie of the reversed suffixes and a hash set of the matches when first
+ * needed after a change, so that {@link #accepts(VirtualFile)} costs one pass over the name and allocates nothing.
+ * The filter may be used by concurrent scanners, also while it is being changed.
  *
  * @author somebody@jboss.org
  * @author Scott.Stark@jboss.org
@@ -91,6 +100,11 @@ public class ExtensibleFilter implements VirtualFileFilter {
      */
     private List<String> matches;
 
+    /**
+     * The compiled lists, or null if they changed since the last compilation
+     */
+    private volatile Compiled compiled;
+
     /**
      * Use the default values for suffixes, prefixes, and matches
      */
@@ -121,119 +135,236 @@ public class ExtensibleFilter implements VirtualFileFilter {
         this.suffixes = new ArrayList<String>(Arrays.asList(suffixes));
     }
 
-    public void addPrefix(String prefix) {
+    public synchronized void addPrefix(String prefix) {
         prefixes.add(prefix);
         Collections.sort(prefixes);
+        compiled = null;
     }
 
-    public void addPrefixes(String[] prefixes) {
+    public synchronized void addPrefixes(String[] prefixes) {
         this.prefixes.addAll(Arrays.asList(prefixes));
         Collections.sort(this.prefixes);
+        compiled = null;
     }
 
-    public void delPrefix(String prefix) {
+    public synchronized void delPrefix(String prefix) {
         prefixes.remove(prefix);
+        compiled = null;
     }
 
-    public void delPrefixes(String[] prefixes) {
+    public synchronized void delPrefixes(String[] prefixes) {
         this.prefixes.removeAll(Arrays.asList(prefixes));
         Collections.sort(this.prefixes);
+        compiled = null;
     }
 
-    public void addSuffix(String suffix) {
+    public synchronized void addSuffix(String suffix) {
         suffixes.add(suffix);
         Collections.sort(suffixes, reverseComparator);
+        compiled = null;
     }
 
-    public void addSuffixes(String[] suffixes) {
+    public synchronized void addSuffixes(String[] suffixes) {
         this.suffixes.addAll(Arrays.asList(suffixes));
         Collections.sort(this.suffixes, reverseComparator);
+        compiled = null;
     }
 
-    public void delSuffix(String suffix) {
+    public synchronized void delSuffix(String suffix) {
         suffixes.remove(suffix);
+        compiled = null;
     }
 
-    public void delSuffixes(String[] suffixes) {
+    public synchronized void delSuffixes(String[] suffixes) {
         this.suffixes.removeAll(Arrays.asList(suffixes));
         Collections.sort(this.suffixes, reverseComparator);
+        compiled = null;
     }
 
-    public String[] getSuffixes() {
+    public synchronized String[] getSuffixes() {
         String[] tmp = new String[suffixes.size()];
         suffixes.toArray(tmp);
         return tmp;
     }
 
-    public void setSuffixes(String[] suffixes) {
+    public synchronized void setSuffixes(String[] suffixes) {
         Arrays.sort(suffixes, reverseComparator);
         this.suffixes.clear();
         this.suffixes.addAll(Arrays.asList(suffixes));
+        compiled = null;
     }
 
-    public String[] getPrefixes() {
+    public synchronized String[] getPrefixes() {
         String[] tmp = new String[prefixes.size()];
         prefixes.toArray(tmp);
         return tmp;
     }
 
-    public void setPrefixes(String[] prefixes) {
+    public synchronized void setPrefixes(String[] prefixes) {
         Arrays.sort(prefixes);
         this.prefixes.clear();
         this.prefixes.addAll(Arrays.asList(prefixes));
+        compiled = null;
     }
 
-    public String[] getMatches() {
+    public synchronized String[] getMatches() {
         String[] tmp = new String[matches.size()];
         matches.toArray(tmp);
         return tmp;
     }
 
-    public void setMatches(String[] matches) {
+    public synchronized void setMatches(String[] matches) {
         Arrays.sort(matches);
         this.matches.clear();
         this.matches.addAll(Arrays.asList(matches));
+        compiled = null;
     }
 
     /**
-     * If the filename matches any string in the prefix, suffix, or matches array, return false.  Perhaps a bit of
-     * overkill, but this method operates in log(n) time, where n is the size of the arrays.
+     * If the filename matches any string in the prefix, suffix, or matches array, return false.  This costs one pass
+     * over the name, whatever the sizes of the arrays.
      *
      * @param file The file to be tested
      *
      * @return <code>false</code> if the filename matches any of the prefixes, suffixes, or matches.
      */
     public boolean accepts(VirtualFile file) {
-        String name = file.getName();
-        // check exact match
-        int index = Collections.binarySearch(matches, name);
-        if (index >= 0)
-            return false;
-        // check prefix
-        index = Collections.binarySearch(prefixes, name);
-        if (index >= 0)
-            return false;
-        if (index < -1) {
-            // The < 0 index gives the first index greater than name
-            int firstLessIndex = -2 - index;
-            String prefix = prefixes.get(firstLessIndex);
-            // If name starts with an ingored prefix ignore name
-            if (name.startsWith(prefix))
-                return false;
+        return acceptsName(file.getName());
+    }
+
+    /**
+     * Determine whether a file name passes this filter.
+     *
+     * @param name the file name
+     * @return <code>false</code> if the name matches any of the prefixes, suffixes, or matches
+     */
+    boolean acceptsName(String name) {
+        Compiled compiled = this.compiled;
+        if (compiled == null)
+            compiled = compile();
+        return ! compiled.matches.contains(name) && ! compiled.prefixes.matchesPrefixOf(name) && ! compiled.suffixes.matchesSuffixOf(name);
+    }
+
+    private synchronized Compiled compile() {
+        Compiled compiled = this.compiled;
+        if (compiled == null)
+            this.compiled = compiled = new Compiled(matches, prefixes, suffixes);
+        return compiled;
+    }
+
+    /**
+     * An immutable snapshot of the lists.
+     */
+    private static final class Compiled {
+        private final Set<String> matches;
+        private final CharTrie prefixes;
+        private final CharTrie suffixes;
+
+        Compiled(List<String> matches, List<String> prefixes, List<String> suffixes) {
+            this.matches = new HashSet<String>(matches);
+            this.prefixes = new CharTrie(prefixes, false);
+            this.suffixes = new CharTrie(suffixes, true);
+        }
+    }
+
+    /**
+     * A trie of strings flattened into arrays.  The labels of the edges leaving each node are sorted, and the edge for
+     * a character is found by binary search.
+     */
+    private static final class CharTrie {
+        private final char[][] labels;
+        private final int[][] targets;
+        private final boolean[] terminal;
+
+        CharTrie(Collection<String> strings, boolean reversed) {
+            final List<Node> nodes = new ArrayList<Node>();
+            final Node root = new Node();
+            nodes.add(root);
+            for (String string : strings) {
+                Node node = root;
+                for (int i = 0; i < string.length(); i++) {
+                    final char c = string.charAt(reversed ? string.length() - 1 - i : i);
+                    Node child = node.children.get(Character.valueOf(c));
+                    if (child == null) {
+                        child = new Node();
+                        child.index = nodes.size();
+                        nodes.add(child);
+                        node.children.put(Character.valueOf(c), child);
+                    }
+                    node = child;
+                }
+                node.terminal = true;
+            }
+            labels = new char[nodes.size()][];
+            targets = new int[nodes.size()][];
+            terminal = new boolean[nodes.size()];
+            for (Node node : nodes) {
+                final char[] nodeLabels = new char[node.children.size()];
+                final int[] nodeTargets = new int[node.children.size()];
+                int i = 0;
+                for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                    nodeLabels[i] = entry.getKey().charValue();
+                    nodeTargets[i++] = entry.getValue().index;
+                }
+                labels[node.index] = nodeLabels;
+                targets[node.index] = nodeTargets;
+                terminal[node.index] = node.terminal;
+            }
         }
-        // check suffix
-        index = Collections.binarySearch(suffixes, name, reverseComparator);
-        if (index >= 0)
-            return false;
-        if (index < -1) {
-            // The < 0 index gives the first index greater than name
-            int firstLessIndex = -2 - index;
-            String suffix = suffixes.get(firstLessIndex);
-            // If name ends with an ingored suffix ignore name
-            if (name.endsWith(suffix))
-                return false;
+
+        /**
+         * Determine whether the name starts with any of the strings.
+         */
+        boolean matchesPrefixOf(String name) {
+            int node = 0;
+            for (int i = 0; ; i++) {
+                if (terminal[node])
+                    return true;
+                if (i == name.length())
+                    return false;
+                node = next(node, name.charAt(i));
+                if (node == -1)
+                    return false;
+            }
+        }
+
+        /**
+         * Determine whether the name ends with any of the strings, which were added reversed.
+         */
+        boolean matchesSuffixOf(String name) {
+            int node = 0;
+            for (int i = name.length() - 1; ; i--) {
+                if (terminal[node])
+                    return true;
+                if (i < 0)
+                    return false;
+                node = next(node, name.charAt(i));
+                if (node == -1)
+                    return false;
+            }
+        }
+
+        private int next(int node, char c) {
+            final char[] nodeLabels = labels[node];
+            int low = 0;
+            int high = nodeLabels.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final char label = nodeLabels[mid];
+                if (label < c)
+                    low = mid + 1;
+                else if (label > c)
+                    high = mid - 1;
+                else
+                    return targets[node][mid];
+            }
+            return -1;
+        }
+
+        private static final class Node {
+            private final Map<Character, Node> children = new TreeMap<Character, Node>();
+            private int index;
+            private boolean terminal;
         }
-        // everything checks out.
-        return true;
     }
 }
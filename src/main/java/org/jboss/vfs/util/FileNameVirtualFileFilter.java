@@ -58,7 +58,18 @@ public class FileNameVirtualFileFilter implements VirtualFileFilter
     */
    public boolean accepts(VirtualFile file)
    {
-      String pathName = getPathName(file);
+      return accepts(file, getPathName(file));
+   }
+
+   /**
+    * Do we accept file, given its path name.
+    *
+    * @param file the virtual file
+    * @param pathName the path name, as returned by {@link #getPathName(VirtualFile)}
+    * @return false if file is excluded by excludes map, true other wise
+    */
+   boolean accepts(VirtualFile file, String pathName)
+   {
       for (Map.Entry<String, Set<String>> entry : excludes.entrySet())
       {
          String key = entry.getKey();
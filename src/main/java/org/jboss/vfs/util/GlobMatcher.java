@@ -0,0 +1,296 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A glob compiled into an automaton over path segments.  Unlike the pattern of {@link
+ * org.jboss.vfs.VFSUtils#getGlobPattern(String)}, which can only be tested against complete path names, the matcher
+ * is fed one name at a time as a walk descends, and tells after each directory whether anything below it can still
+ * match, so that a walk can skip whole subtrees.
+ * <p/>
+ * The glob is split at {@code '/'} into segments.  A segment of {@code "**"} matches any number of directories,
+ * including none, as in {@code ant} and unlike the regular expression; in other segments {@code '*'} matches zero or more characters, {@code '?'} matches one character
+ * and {@code '\'} escapes the next character.  Consecutive slashes are collapsed, a leading slash is ignored and, as in
+ * {@code ant}, a trailing slash stands for a trailing {@code "**"}.  Globs are matched against paths relative to
+ * the directory a walk starts from.
+ * <p/>
+ * The states of the automaton are created as they are first reached and then shared, so that the matcher is a
+ * deterministic automaton built lazily from the segments.  Instances are thread-safe.
+ */
+public final class GlobMatcher {
+
+    private final String glob;
+    /** The segment patterns; {@code null} stands for {@code "**"} */
+    private final Segment[] segments;
+    private final ConcurrentMap<BitSet, State> states = new ConcurrentHashMap<BitSet, State>();
+    private final State initialState;
+
+    private GlobMatcher(String glob, Segment[] segments) {
+        this.glob = glob;
+        this.segments = segments;
+        final BitSet positions = new BitSet(segments.length + 1);
+        positions.set(0);
+        initialState = getState(positions);
+    }
+
+    /**
+     * Compile a glob.
+     *
+     * @param glob the glob
+     *
+     * @return the matcher
+     *
+     * @throws IllegalArgumentException if the glob is null
+     */
+    public static GlobMatcher compile(String glob) {
+        if (glob == null)
+            throw new IllegalArgumentException("Null glob");
+        final List<Segment> segments = new ArrayList<Segment>();
+        int start = 0;
+        final int length = glob.length();
+        while (start < length) {
+            int end = start;
+            while (end < length && glob.charAt(end) != '/') {
+                if (glob.charAt(end) == '\\' && end + 1 < length)
+                    end++;
+                end++;
+            }
+            if (end > start) {
+                final String segment = glob.substring(start, end);
+                if (segment.equals("**")) {
+                    // consecutive ** are the same as one
+                    if (segments.isEmpty() || segments.get(segments.size() - 1) != null)
+                        segments.add(null);
+                } else {
+                    segments.add(new Segment(segment));
+                }
+            }
+            start = end + 1;
+        }
+        if (length > 0 && glob.charAt(length - 1) == '/' && (segments.isEmpty() || segments.get(segments.size() - 1) != null))
+            segments.add(null);
+        return new GlobMatcher(glob, segments.toArray(new Segment[segments.size()]));
+    }
+
+    /**
+     * Get the state before any name has been consumed, which is the state of the directory a walk starts from.
+     *
+     * @return the initial state
+     */
+    public State getInitialState() {
+        return initialState;
+    }
+
+    /**
+     * Get the state after consuming one more name.
+     *
+     * @param state the state of the directory
+     * @param name the name of an entry of the directory
+     *
+     * @return the state of the entry
+     */
+    public State next(State state, String name) {
+        if (state.positions.isEmpty())
+            return state;
+        final Segment[] segments = this.segments;
+        final BitSet positions = state.positions;
+        final BitSet next = new BitSet(segments.length + 1);
+        for (int i = positions.nextSetBit(0); i >= 0 && i < segments.length; i = positions.nextSetBit(i + 1)) {
+            final Segment segment = segments[i];
+            if (segment == null) {
+                // ** consumes the name and stays
+                next.set(i);
+            } else if (segment.matches(name)) {
+                next.set(i + 1);
+            }
+        }
+        return getState(next);
+    }
+
+    /**
+     * Determine whether a relative path matches the glob.
+     *
+     * @param path the path, separated by {@code '/'}
+     *
+     * @return {@code true} if the path matches
+     */
+    public boolean matches(String path) {
+        State state = initialState;
+        int start = 0;
+        final int length = path.length();
+        while (start < length && ! state.isDead()) {
+            int end = path.indexOf('/', start);
+            if (end == -1)
+                end = length;
+            if (end > start)
+                state = next(state, path.substring(start, end));
+            start = end + 1;
+        }
+        return state.isMatch();
+    }
+
+    /**
+     * Get the glob this matcher was compiled from.
+     *
+     * @return the glob
+     */
+    public String getGlob() {
+        return glob;
+    }
+
+    public String toString() {
+        return glob;
+    }
+
+    private State getState(BitSet positions) {
+        // a ** may also match no directory at all
+        for (int i = positions.nextSetBit(0); i >= 0 && i < segments.length; i = positions.nextSetBit(i + 1)) {
+            if (segments[i] == null)
+                positions.set(i + 1);
+        }
+        final State state = states.get(positions);
+        if (state != null)
+            return state;
+        final State newState = new State(positions, positions.get(segments.length), positions.nextSetBit(0) < segments.length && ! positions.isEmpty());
+        final State existing = states.putIfAbsent(positions, newState);
+        return existing == null ? newState : existing;
+    }
+
+    /**
+     * A state of the matcher, standing for all the paths which lead to it.
+     */
+    public static final class State {
+        private final BitSet positions;
+        private final boolean match;
+        private final boolean deeper;
+
+        State(BitSet positions, boolean match, boolean deeper) {
+            this.positions = positions;
+            this.match = match;
+            this.deeper = deeper;
+        }
+
+        /**
+         * Determine whether the paths leading to this state match the glob.
+         *
+         * @return {@code true} if they match
+         */
+        public boolean isMatch() {
+            return match;
+        }
+
+        /**
+         * Determine whether a path below the paths leading to this state can match the glob.  A walk need not descend
+         * into a directory in a state for which this is {@code false}.
+         *
+         * @return {@code true} if a longer path can match
+         */
+        public boolean canMatchBelow() {
+            return deeper;
+        }
+
+        /**
+         * Determine whether neither the paths leading to this state nor any path below them can match the glob.
+         *
+         * @return {@code true} if nothing can match any more
+         */
+        public boolean isDead() {
+            return positions.isEmpty();
+        }
+    }
+
+    /**
+     * A segment pattern other than {@code "**"}.
+     */
+    private static final class Segment {
+        private static final char LITERAL = 0;
+        private static final char ANY = 1;
+        private static final char ONE = 2;
+
+        /** The literal, if the segment contains no wildcards */
+        private final String literal;
+        private final char[] chars;
+        private final char[] kinds;
+
+        Segment(String segment) {
+            final StringBuilder chars = new StringBuilder(segment.length());
+            final StringBuilder kinds = new StringBuilder(segment.length());
+            boolean wildcards = false;
+            for (int i = 0; i < segment.length(); i++) {
+                char c = segment.charAt(i);
+                char kind = LITERAL;
+                if (c == '\\' && i + 1 < segment.length()) {
+                    c = segment.charAt(++i);
+                } else if (c == '*') {
+                    kind = ANY;
+                    // consecutive * are the same as one
+                    if (kinds.length() > 0 && kinds.charAt(kinds.length() - 1) == ANY)
+                        continue;
+                } else if (c == '?') {
+                    kind = ONE;
+                }
+                wildcards |= kind != LITERAL;
+                chars.append(c);
+                kinds.append(kind);
+            }
+            literal = wildcards ? null : chars.toString();
+            this.chars = chars.toString().toCharArray();
+            this.kinds = kinds.toString().toCharArray();
+        }
+
+        boolean matches(String name) {
+            if (literal != null)
+                return literal.equals(name);
+            // the usual greedy match, backtracking to the last *
+            final char[] chars = this.chars;
+            final char[] kinds = this.kinds;
+            final int length = name.length();
+            int p = 0;
+            int n = 0;
+            int star = -1;
+            int starName = 0;
+            while (n < length) {
+                if (p < chars.length && kinds[p] == ANY) {
+                    star = p++;
+                    starName = n;
+                } else if (p < chars.length && (kinds[p] == ONE || chars[p] == name.charAt(n))) {
+                    p++;
+                    n++;
+                } else if (star != -1) {
+                    p = star + 1;
+                    n = ++starName;
+                } else {
+                    return false;
+                }
+            }
+            while (p < chars.length && kinds[p] == ANY)
+                p++;
+            return p == chars.length;
+        }
+    }
+}
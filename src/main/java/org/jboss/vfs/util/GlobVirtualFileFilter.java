@@ -0,0 +1,163 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.util;
+
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualFileFilter;
+import org.jboss.vfs.VirtualFileFilterWithAttributes;
+import org.jboss.vfs.VisitorAttributes;
+
+/**
+ * Accepts the files below a base directory whose relative paths match a glob; see {@link GlobMatcher} for the syntax.
+ * The attributes of this filter recurse only into the directories below which a file can still match, so a visitor
+ * created from the filter alone, such as {@code new FilterVirtualFileVisitor(filter)}, or a walk using {@link
+ * #getAttributes()} and {@link VirtualFile#iterateChildren(VirtualFileFilter, VisitorAttributes, int)}, skips every
+ * subtree which cannot match.  For example, {@code WEB-INF/lib/*.jar} enters only {@code WEB-INF} and {@code
+ * WEB-INF/lib}.
+ * <p/>
+ * The filter remembers the state of the directory it was last asked about, since the entries of a directory are
+ * usually visited one after another; other files cost one step of the matcher per directory between them and the base.
+ * Instances are thread-safe.
+ */
+public class GlobVirtualFileFilter implements VirtualFileFilterWithAttributes {
+
+    private final VirtualFile base;
+    private final GlobMatcher matcher;
+    private final VisitorAttributes attributes;
+    private volatile DirectoryState last;
+
+    /**
+     * Create a new instance which recurses into the directories which may contain matches and visits both files and
+     * directories.
+     *
+     * @param base the directory the glob is relative to
+     * @param glob the glob
+     *
+     * @throws IllegalArgumentException if the base or the glob is null
+     */
+    public GlobVirtualFileFilter(VirtualFile base, String glob) {
+        this(base, GlobMatcher.compile(glob));
+    }
+
+    /**
+     * Create a new instance which recurses into the directories which may contain matches and visits both files and
+     * directories.
+     *
+     * @param base the directory the glob is relative to
+     * @param matcher the compiled glob
+     *
+     * @throws IllegalArgumentException if the base or the matcher is null
+     */
+    public GlobVirtualFileFilter(VirtualFile base, GlobMatcher matcher) {
+        if (base == null)
+            throw new IllegalArgumentException("Null base");
+        if (matcher == null)
+            throw new IllegalArgumentException("Null matcher");
+        this.base = base;
+        this.matcher = matcher;
+        attributes = new VisitorAttributes();
+        attributes.setRecurseFilter(getRecurseFilter());
+        last = new DirectoryState(base, matcher.getInitialState());
+    }
+
+    /**
+     * Accept a file if its path relative to the base matches the glob.
+     *
+     * @param file the file
+     *
+     * @return {@code true} if the file matches
+     */
+    public boolean accepts(VirtualFile file) {
+        final GlobMatcher.State state = getState(file);
+        return state != null && state.isMatch();
+    }
+
+    /**
+     * Get a filter which accepts the directories below which a file can match the glob, for use as a recurse filter.
+     *
+     * @return the recurse filter
+     */
+    public VirtualFileFilter getRecurseFilter() {
+        return new VirtualFileFilter() {
+            public boolean accepts(VirtualFile file) {
+                final GlobMatcher.State state = getState(file);
+                if (state == null || ! state.canMatchBelow())
+                    return false;
+                // the entries of the directory are asked about next
+                last = new DirectoryState(file, state);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get the attributes, which recurse into the directories below which a file can match the glob.
+     *
+     * @return the attributes
+     */
+    public VisitorAttributes getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Get the matcher.
+     *
+     * @return the matcher
+     */
+    public GlobMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Get the state of a file, walking up to the last directory asked about or to the base.
+     *
+     * @return the state, or {@code null} if the file is not below the base
+     */
+    private GlobMatcher.State getState(VirtualFile file) {
+        final DirectoryState last = this.last;
+        if (file.equals(last.directory))
+            return last.state;
+        if (file.equals(base))
+            return matcher.getInitialState();
+        final VirtualFile parent = file.getParent();
+        if (parent == null)
+            return null;
+        final GlobMatcher.State parentState = getState(parent);
+        if (parentState == null)
+            return null;
+        return matcher.next(parentState, file.getName());
+    }
+
+    public String toString() {
+        return base.getPathName() + "/" + matcher;
+    }
+
+    private static final class DirectoryState {
+        private final VirtualFile directory;
+        private final GlobMatcher.State state;
+
+        DirectoryState(VirtualFile directory, GlobMatcher.State state) {
+            this.directory = directory;
+            this.state = state;
+        }
+    }
+}
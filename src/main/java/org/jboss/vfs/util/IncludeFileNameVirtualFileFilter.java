@@ -21,22 +21,39 @@
  */
 package org.jboss.vfs.util;
 
+import org.jboss.vfs.EntryQuery;
 import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualFileFilterWithQuery;
 
 /**
  * Include file name filter.
  *
  * @author <a href="mailto:ales.justin@jboss.org">Ales Justin</a>
  */
-public class IncludeFileNameVirtualFileFilter extends IncludePatternVirtualFileFilter
+public class IncludeFileNameVirtualFileFilter extends IncludePatternVirtualFileFilter implements VirtualFileFilterWithQuery
 {
+   private final String regexp;
+
    public IncludeFileNameVirtualFileFilter(String regexp)
    {
       super(regexp);
+      this.regexp = regexp;
    }
 
    protected String getMatchString(VirtualFile file)
    {
       return file.getName();
    }
+
+   /**
+    * Get the query for the pattern.  Subclasses which change what is accepted get no query.
+    *
+    * @return the query, or {@code null} for a subclass
+    */
+   public EntryQuery getQuery()
+   {
+      if (getClass() != IncludeFileNameVirtualFileFilter.class)
+         return null;
+      return EntryQuery.nameMatches(regexp);
+   }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VisitorAttributes;
+
+/**
+ * An index from package to the roots which contain it, in the spirit of the {@code INDEX.LIST} of a jar but built
+ * automatically.  A class loader can use it to skip every root which does not contain the package of a class or
+ * resource, rather than probing all of them.
+ * <p/>
+ * A package is a directory, relative to a root, which directly contains at least one file; files at the top level of a
+ * root belong to the unnamed package {@code ""}.  The index is a snapshot of the roots taken at construction time and
+ * must be rebuilt if their contents or the mounts below them change.  Instances are immutable and thread-safe.
+ */
+public class PackageIndex {
+
+    private final VirtualFile[] roots;
+    /** Package path ("org/jboss/vfs") to the ascending indexes of the roots containing it */
+    private final Map<String, int[]> index;
+
+    /**
+     * Build an index of the given roots.  Directories are scanned once; roots which are mounted archives are read from
+     * the entry table of the archive, without any I/O.
+     *
+     * @param roots the roots, in lookup order
+     *
+     * @throws IllegalArgumentException if the list of roots is null or contains null
+     */
+    public PackageIndex(List<VirtualFile> roots) {
+        if (roots == null)
+            throw new IllegalArgumentException("Null roots");
+        this.roots = roots.toArray(new VirtualFile[roots.size()]);
+        final Map<String, int[]> index = new HashMap<String, int[]>();
+        final VisitorAttributes attributes = VisitorAttributes.RECURSE_LEAVES_ONLY;
+        for (int i = 0; i < this.roots.length; i++) {
+            final VirtualFile root = this.roots[i];
+            if (root == null)
+                throw new IllegalArgumentException("Null root");
+            final int[] single = { i };
+            for (VirtualFile file : root.iterateChildren(null, attributes, Integer.MAX_VALUE)) {
+                final VirtualFile directory = file.getParent();
+                ResourceIndex.add(index, directory.equals(root) ? "" : directory.getPathNameRelativeTo(root), single);
+            }
+        }
+        this.index = index;
+    }
+
+    /**
+     * Get the roots of this index.
+     *
+     * @return the roots, in lookup order
+     */
+    public List<VirtualFile> getRoots() {
+        final List<VirtualFile> list = new ArrayList<VirtualFile>(roots.length);
+        Collections.addAll(list, roots);
+        return list;
+    }
+
+    /**
+     * Get the paths of all indexed packages, such as {@code "org/jboss/vfs"}.
+     *
+     * @return the package paths
+     */
+    public Set<String> getPackagePaths() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Get the roots which contain the given package.
+     *
+     * @param packageName the package name, such as {@code "org.jboss.vfs"}
+     *
+     * @return the roots, in lookup order; empty if no root contains the package
+     */
+    public List<VirtualFile> getPackageRoots(String packageName) {
+        if (packageName == null)
+            throw new IllegalArgumentException("Null package name");
+        return getRoots(index.get(packageName.replace('.', '/')));
+    }
+
+    /**
+     * Get the roots which contain the package of the given class.
+     *
+     * @param className the binary class name, such as {@code "org.jboss.vfs.VFS"}
+     *
+     * @return the roots, in lookup order; empty if no root contains the package
+     */
+    public List<VirtualFile> getClassRoots(String className) {
+        if (className == null)
+            throw new IllegalArgumentException("Null class name");
+        final int idx = className.lastIndexOf('.');
+        return getRoots(index.get(idx == -1 ? "" : className.substring(0, idx).replace('.', '/')));
+    }
+
+    /**
+     * Get the roots which contain the directory of the given resource.  Only those roots can contain the resource
+     * itself.
+     *
+     * @param path the resource path, such as {@code "org/jboss/vfs/VFS.class"}
+     *
+     * @return the roots, in lookup order; empty if no root contains the directory of the resource
+     */
+    public List<VirtualFile> getResourceRoots(String path) {
+        if (path == null)
+            throw new IllegalArgumentException("Null path");
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/')
+            start++;
+        final int idx = path.lastIndexOf('/');
+        return getRoots(index.get(idx < start ? "" : path.substring(start, idx)));
+    }
+
+    private List<VirtualFile> getRoots(int[] found) {
+        if (found == null)
+            return Collections.emptyList();
+        final List<VirtualFile> list = new ArrayList<VirtualFile>(found.length);
+        for (int i : found)
+            list.add(roots[i]);
+        return list;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.vfs.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.vfs.VirtualFile;
+
+/**
+ * A combined index of the resources below an ordered list of roots, for class path style lookups.  Instead of trying
+ * {@code root.getChild(name).exists()} on each root in turn, a lookup is a single hash probe which yields the roots
+ * containing the resource, in root order.
+ * <p/>
+ * The index is a snapshot of the roots taken at construction time; it must be rebuilt if their contents or the mounts
+ * below them change.  Paths are relative to the roots, use {@code '/'} as separator and are matched case-sensitively.
+ * Both files and directories are indexed.  Instances are immutable and thread-safe.
+ */
+public class ResourceIndex {
+
+    private final VirtualFile[] roots;
+    /** Resource path to the ascending indexes of the roots containing it */
+    private final Map<String, int[]> index;
+
+    /**
+     * Build an index of the given roots.  Directories are scanned once; roots which are mounted archives are read from
+     * the entry table of the archive, without any I/O.
+     *
+     * @param roots the roots, in lookup order
+     *
+     * @throws IllegalArgumentException if the list of roots is null or contains null
+     */
+    public ResourceIndex(List<VirtualFile> roots) {
+        if (roots == null)
+            throw new IllegalArgumentException("Null roots");
+        this.roots = roots.toArray(new VirtualFile[roots.size()]);
+        final Map<String, int[]> index = new HashMap<String, int[]>();
+        // entries found in a single root, which is the common case, share one array per root
+        final int[][] single = new int[this.roots.length][];
+        for (int i = 0; i < this.roots.length; i++) {
+            final VirtualFile root = this.roots[i];
+            if (root == null)
+                throw new IllegalArgumentException("Null root");
+            single[i] = new int[] { i };
+            for (VirtualFile file : root.iterateChildrenRecursively(null)) {
+                add(index, file.getPathNameRelativeTo(root), single[i]);
+            }
+        }
+        this.index = index;
+    }
+
+    /**
+     * Record that the given key was found in a root.  Roots must be added in ascending order.
+     *
+     * @param index the index to add to
+     * @param key the key
+     * @param root a shared single element array holding the root index
+     */
+    static void add(Map<String, int[]> index, String key, int[] root) {
+        final int[] found = index.get(key);
+        if (found == null) {
+            index.put(key, root);
+        } else if (found[found.length - 1] != root[0]) {
+            final int[] more = new int[found.length + 1];
+            System.arraycopy(found, 0, more, 0, found.length);
+            more[found.length] = root[0];
+            index.put(key, more);
+        }
+    }
+
+    /**
+     * Get the roots of this index.
+     *
+     * @return the roots, in lookup order
+     */
+    public List<VirtualFile> getRoots() {
+        final List<VirtualFile> list = new ArrayList<VirtualFile>(roots.length);
+        Collections.addAll(list, roots);
+        return list;
+    }
+
+    /**
+     * Get the number of distinct resource paths in the index.
+     *
+     * @return the number of paths
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Determine whether any root contains the given resource.
+     *
+     * @param path the resource path
+     *
+     * @return {@code true} if some root contains the resource
+     */
+    public boolean contains(String path) {
+        return index.containsKey(normalize(path));
+    }
+
+    /**
+     * Get the resource from the first root which contains it.
+     *
+     * @param path the resource path
+     *
+     * @return the resource, or {@code null} if no root contains it
+     */
+    public VirtualFile getResource(String path) {
+        path = normalize(path);
+        final int[] found = index.get(path);
+        return found == null ? null : roots[found[0]].getChild(path);
+    }
+
+    /**
+     * Get the resource from every root which contains it.
+     *
+     * @param path the resource path
+     *
+     * @return the resources, in root order; empty if no root contains it
+     */
+    public List<VirtualFile> getResources(String path) {
+        path = normalize(path);
+        final int[] found = index.get(path);
+        if (found == null)
+            return Collections.emptyList();
+        final List<VirtualFile> resources = new ArrayList<VirtualFile>(found.length);
+        for (int i : found)
+            resources.add(roots[i].getChild(path));
+        return resources;
+    }
+
+    /**
+     * Get the first root which contains the given resource.
+     *
+     * @param path the resource path
+     *
+     * @return the root, or {@code null} if no root contains the resource
+     */
+    public VirtualFile getRoot(String path) {
+        final int[] found = index.get(normalize(path));
+        return found == null ? null : roots[found[0]];
+    }
+
+    private static String normalize(String path) {
+        if (path == null)
+            throw new IllegalArgumentException("Null path");
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/')
+            start++;
+        while (end > start && path.charAt(end - 1) == '/')
+            end--;
+        return start == 0 && end == path.length() ? path : path.substring(start, end);
+    }
+}
@@ -26,7 +26,9 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 
 import org.jboss.logging.Logger;
+import org.jboss.vfs.EntryQuery;
 import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualFileFilterWithQuery;
 import org.jboss.vfs.VisitorAttributes;
 
 /**
@@ -36,7 +38,7 @@ import org.jboss.vfs.VisitorAttributes;
  * @author adrian@jboss.org
  * @version $Revision: 44223 $
  */
-public class SuffixMatchFilter extends AbstractVirtualFileFilterWithAttributes {
+public class SuffixMatchFilter extends AbstractVirtualFileFilterWithAttributes implements VirtualFileFilterWithQuery {
 
     private static Logger log = Logger.getLogger(SuffixMatchFilter.class);
     /**
@@ -115,4 +117,19 @@ public class SuffixMatchFilter extends AbstractVirtualFileFilterWithAttributes {
             log.trace(file + " accepted: " + accepts);
         return accepts;
     }
+
+    /**
+     * Get the query for the suffixes.  Subclasses which change what is accepted get no query.
+     *
+     * @return the query, or {@code null} for a subclass
+     */
+    public EntryQuery getQuery() {
+        if (getClass() != SuffixMatchFilter.class)
+            return null;
+        final EntryQuery[] queries = new EntryQuery[suffixes.size()];
+        int i = 0;
+        for (String suffix : suffixes)
+            queries[i++] = EntryQuery.nameSuffix(suffix);
+        return queries.length == 1 ? queries[0] : EntryQuery.or(queries);
+    }
 }
@@ -23,8 +23,9 @@ package org.jboss.vfs.util;
 
 import java.util.Collection;
 
+import org.jboss.vfs.EntryQuery;
 import org.jboss.vfs.VirtualFile;
-import org.jboss.vfs.VirtualFileFilter;
+import org.jboss.vfs.VirtualFileFilterWithQuery;
 
 /**
  * Filters out a set of suffixes
@@ -32,7 +33,7 @@ import org.jboss.vfs.VirtualFileFilter;
  * @author adrian@jboss.org
  * @version $Revision: 44223 $
  */
-public class SuffixesExcludeFilter implements VirtualFileFilter {
+public class SuffixesExcludeFilter implements VirtualFileFilterWithQuery {
 
     /**
      * The suffixes
@@ -64,4 +65,19 @@ public class SuffixesExcludeFilter implements VirtualFileFilter {
         }
         return true;
     }
+
+    /**
+     * Get the query for the excluded suffixes.  Subclasses which change what is accepted get no query.
+     *
+     * @return the query, or {@code null} for a subclass
+     */
+    public EntryQuery getQuery() {
+        if (getClass() != SuffixesExcludeFilter.class)
+            return null;
+        final EntryQuery[] queries = new EntryQuery[suffixes.size()];
+        int i = 0;
+        for (String suffix : suffixes)
+            queries[i++] = EntryQuery.nameSuffix(suffix);
+        return EntryQuery.not(EntryQuery.or(queries));
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.vfs.TempDir;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.spi.CachingRealFileSystem;
+
+/**
+ * Test for {@link CachingRealFileSystem}
+ */
+public class CachingRealFileSystemTestCase extends AbstractVFSTest
+{
+   private TempDir tempDir;
+
+   public CachingRealFileSystemTestCase(String name)
+   {
+      super(name);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      tempDir = provider.createTempDir("caching");
+   }
+
+   protected void tearDown() throws Exception
+   {
+      VFSUtils.safeClose(tempDir);
+      super.tearDown();
+   }
+
+   public void testAgreesWithRealFileSystem() throws Exception
+   {
+      final File root = getVirtualFile("/vfs/test").getPhysicalFile();
+      final VirtualFile real = VFS.getChild("/caching-test/real");
+      final VirtualFile cached = VFS.getChild("/caching-test/cached");
+      final Closeable realMount = VFS.mountReal(root, real);
+      final Closeable cachedMount = VFS.mountCachedReal(root, cached);
+      try
+      {
+         for (int i = 0; i < 2; i++)
+         {
+            final List<String> expected = new ArrayList<String>();
+            for (VirtualFile file : real.getChildrenRecursively())
+               expected.add(file.getPathNameRelativeTo(real) + " " + file.isDirectory() + " " + file.getSize() + " " + file.getLastModified());
+            final List<String> actual = new ArrayList<String>();
+            for (VirtualFile file : cached.getChildrenRecursively())
+               actual.add(file.getPathNameRelativeTo(cached) + " " + file.isDirectory() + " " + file.getSize() + " " + file.getLastModified());
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(realMount, cachedMount);
+      }
+   }
+
+   public void testCheckInterval() throws Exception
+   {
+      final File root = tempDir.getRoot();
+      final CachingRealFileSystem fileSystem = new CachingRealFileSystem(root, 100, 60000L);
+      final VirtualFile mountPoint = VFS.getChild("/caching-test/interval");
+      final Closeable mount = VFS.mount(mountPoint, fileSystem);
+      try
+      {
+         write(new File(root, "a.txt"), 3);
+         assertEquals(Collections.singletonList("a.txt"), names(mountPoint));
+         assertEquals(3L, mountPoint.getChild("a.txt").getSize());
+         assertFalse(mountPoint.getChild("b.txt").exists());
+         // changes made behind its back go unnoticed within the interval
+         write(new File(root, "b.txt"), 5);
+         write(new File(root, "a.txt"), 7);
+         assertEquals(Collections.singletonList("a.txt"), names(mountPoint));
+         assertEquals(3L, mountPoint.getChild("a.txt").getSize());
+         assertFalse(mountPoint.getChild("b.txt").exists());
+         fileSystem.flush();
+         assertEquals(2, names(mountPoint).size());
+         assertEquals(7L, mountPoint.getChild("a.txt").getSize());
+         assertEquals(5L, mountPoint.getChild("b.txt").getSize());
+         // but not deletions made through the file system
+         assertTrue(mountPoint.getChild("b.txt").delete());
+         assertFalse(mountPoint.getChild("b.txt").exists());
+         assertEquals(Collections.singletonList("a.txt"), names(mountPoint));
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+
+   public void testRecentChanges() throws Exception
+   {
+      final File root = tempDir.getRoot();
+      final VirtualFile mountPoint = VFS.getChild("/caching-test/recent");
+      final Closeable mount = VFS.mount(mountPoint, new CachingRealFileSystem(root, 100, 0L));
+      try
+      {
+         // modification times within the granularity are never trusted, so every change shows at once
+         for (int i = 0; i < 5; i++)
+         {
+            final File file = new File(root, "file" + i);
+            assertFalse(mountPoint.getChild(file.getName()).exists());
+            write(file, i);
+            assertTrue(mountPoint.getChild(file.getName()).exists());
+            assertEquals(i, mountPoint.getChild(file.getName()).getSize());
+            assertEquals(i + 1, names(mountPoint).size());
+         }
+         assertTrue(new File(root, "file0").delete());
+         assertFalse(mountPoint.getChild("file0").exists());
+         assertEquals(4, names(mountPoint).size());
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+
+   public void testBounded() throws Exception
+   {
+      final File root = tempDir.getRoot();
+      for (int i = 0; i < 20; i++)
+         write(new File(root, "file" + i), i);
+      final CachingRealFileSystem fileSystem = new CachingRealFileSystem(root, 8, 60000L);
+      final VirtualFile mountPoint = VFS.getChild("/caching-test/bounded");
+      final Closeable mount = VFS.mount(mountPoint, fileSystem);
+      try
+      {
+         for (int i = 0; i < 20; i++)
+         {
+            assertEquals(i, mountPoint.getChild("file" + i).getSize());
+            assertTrue(fileSystem.getCachedCount() <= 8);
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+
+   private static List<String> names(VirtualFile directory)
+   {
+      final List<String> names = new ArrayList<String>();
+      for (VirtualFile child : directory.getChildren())
+         names.add(child.getName());
+      Collections.sort(names);
+      return names;
+   }
+
+   private static void write(File file, int size) throws Exception
+   {
+      final FileOutputStream out = new FileOutputStream(file);
+      try
+      {
+         out.write(new byte[size]);
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+}
@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.test.vfs.support.VFSStressHarness;
+import org.jboss.test.vfs.support.VFSStressHarness.Operation;
+import org.jboss.test.vfs.support.VFSStressHarness.Report;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+
+/**
+ * Runs the {@link VFSStressHarness} workloads.  The defaults keep the run short enough for a regular build; set
+ * {@code vfs.stress.threads} (e.g. to 64 or more) and {@code vfs.stress.duration} (milliseconds per workload) to get
+ * meaningful numbers.
+ */
+public class ConcurrentStressTestCase extends AbstractVFSTest
+{
+   private static final int THREADS = Integer.getInteger("vfs.stress.threads", 8);
+   private static final long DURATION = Long.getLong("vfs.stress.duration", 500L);
+   private static final long WARMUP = Long.getLong("vfs.stress.warmup", DURATION / 2);
+
+   private final List<Closeable> mounts = new ArrayList<Closeable>();
+   private VFSStressHarness harness;
+
+   public ConcurrentStressTestCase(String name)
+   {
+      super(name);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      final File archive = getVirtualFile("/vfs/test/jar1.jar").getPhysicalFile();
+      final List<VirtualFile> roots = new ArrayList<VirtualFile>();
+      for (String name : new String[] {"jar1.jar", "simple.ear", "unpacked-outer.jar"})
+      {
+         final VirtualFile root = getVirtualFile("/vfs/test/" + name);
+         if (root.isFile())
+            mounts.add(VFS.mountZip(root, root, provider));
+         roots.add(root);
+      }
+      harness = new VFSStressHarness(provider, roots, archive);
+   }
+
+   protected void tearDown() throws Exception
+   {
+      VFSUtils.safeClose(mounts);
+      super.tearDown();
+   }
+
+   public void testMixedWorkload() throws Exception
+   {
+      final Map<Operation, Integer> weights = new EnumMap<Operation, Integer>(Operation.class);
+      weights.put(Operation.MOUNT_UNMOUNT, 1);
+      weights.put(Operation.RESOLVE, 20);
+      weights.put(Operation.LIST, 5);
+      weights.put(Operation.PHYSICAL_FILE, 2);
+      weights.put(Operation.LAZY_STREAM, 5);
+      weights.put(Operation.AUTOMOUNT, 1);
+      run("mixed", weights);
+   }
+
+   public void testMountUnmount() throws Exception
+   {
+      run("mount/unmount", single(Operation.MOUNT_UNMOUNT));
+   }
+
+   public void testResolve() throws Exception
+   {
+      run("resolve", single(Operation.RESOLVE));
+   }
+
+   public void testList() throws Exception
+   {
+      run("list", single(Operation.LIST));
+   }
+
+   public void testPhysicalFile() throws Exception
+   {
+      run("physical file", single(Operation.PHYSICAL_FILE));
+   }
+
+   public void testLazyStream() throws Exception
+   {
+      run("lazy stream", single(Operation.LAZY_STREAM));
+   }
+
+   public void testAutomount() throws Exception
+   {
+      run("automount", single(Operation.AUTOMOUNT));
+   }
+
+   public void testClassLoading() throws Exception
+   {
+      run("class loading", single(Operation.CLASSLOAD));
+   }
+
+   private Map<Operation, Integer> single(Operation operation)
+   {
+      final Map<Operation, Integer> weights = new EnumMap<Operation, Integer>(Operation.class);
+      weights.put(operation, 1);
+      return weights;
+   }
+
+   private void run(String workload, Map<Operation, Integer> weights) throws Exception
+   {
+      final Report report = harness.run(THREADS, WARMUP, DURATION, weights);
+      getLog().info("Workload " + workload + ": " + report);
+      for (Throwable error : report.getErrors())
+         getLog().error("Workload " + workload + " failed", error);
+      assertEquals("Errors in workload " + workload, 0L, report.getErrorCount());
+      for (Operation operation : weights.keySet())
+         assertTrue("No " + operation + " completed", report.getCount(operation) > 0L);
+   }
+}
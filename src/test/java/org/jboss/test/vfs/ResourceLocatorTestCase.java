@@ -0,0 +1,183 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.test.vfs.support.CountingFileSystem;
+import org.jboss.vfs.ResourceLocator;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.spi.JavaZipFileSystem;
+import org.jboss.vfs.util.BloomFilter;
+
+/**
+ * Test for {@link ResourceLocator}
+ */
+public class ResourceLocatorTestCase extends AbstractVFSTest
+{
+   private final List<Closeable> mounts = new ArrayList<Closeable>();
+   private final List<VirtualFile> roots = new ArrayList<VirtualFile>();
+   private final List<CountingFileSystem> archives = new ArrayList<CountingFileSystem>();
+   private final List<VirtualFile> archiveRoots = new ArrayList<VirtualFile>();
+
+   public ResourceLocatorTestCase(String name)
+   {
+      super(name);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      for (String name : new String[] {"jar1.jar", "jar1", "jar2.jar", "unpacked-outer.jar"})
+      {
+         final VirtualFile root = getVirtualFile("/vfs/test/" + name);
+         if (root.isFile())
+         {
+            final CountingFileSystem archive = new CountingFileSystem(new JavaZipFileSystem(root.getPhysicalFile(), provider.createTempDir(name)));
+            archives.add(archive);
+            archiveRoots.add(root);
+            mounts.add(VFS.mount(root, archive));
+         }
+         roots.add(root);
+      }
+   }
+
+   protected void tearDown() throws Exception
+   {
+      VFSUtils.safeClose(mounts);
+      VFSUtils.safeClose(archives);
+      super.tearDown();
+   }
+
+   public void testLookupsMatchProbing() throws Exception
+   {
+      final ResourceLocator locator = new ResourceLocator(roots);
+      assertEquals(roots, locator.getRoots());
+      final Set<String> paths = new HashSet<String>();
+      int missing = 0;
+      int consulted = 0;
+      for (VirtualFile root : roots)
+      {
+         for (VirtualFile file : root.getChildrenRecursively())
+         {
+            final String path = file.getPathNameRelativeTo(root);
+            // look up each path once before probing, which would remember it as missing from the archives
+            final boolean first = paths.add(path);
+            resetLookups();
+            final List<VirtualFile> resources = locator.getResources(path);
+            final int[] lookups = new int[archives.size()];
+            for (int i = 0; i < lookups.length; i++)
+               lookups[i] = archives.get(i).getLookups();
+            final List<VirtualFile> expected = probe(path);
+            assertEquals(path, expected, resources);
+            assertEquals(path, expected.get(0), locator.getResource(path));
+            assertEquals(path, expected.get(0), locator.getResource("/" + path));
+            for (int i = 0; first && i < lookups.length; i++)
+            {
+               if (! expected.contains(archiveRoots.get(i).getChild(path)))
+               {
+                  missing++;
+                  consulted += lookups[i];
+               }
+            }
+         }
+      }
+      // the archives are not consulted for the paths they do not contain, but for the odd false positive
+      assertTrue(missing > 0);
+      assertTrue(consulted + " of " + missing, consulted * 10 < missing);
+   }
+
+   public void testMissingResource() throws Exception
+   {
+      final ResourceLocator locator = new ResourceLocator(roots);
+      resetLookups();
+      for (int i = 0; i < 100; i++)
+      {
+         assertNull(locator.getResource("org/jboss/Missing" + i + ".class"));
+         assertTrue(locator.getResources("org/jboss/Missing" + i + ".class").isEmpty());
+      }
+      // both archives rule out nearly all of the probes, each of which would reach them once otherwise
+      for (CountingFileSystem archive : archives)
+         assertTrue(archive.getLookups() + " of 100", archive.getLookups() < 10);
+   }
+
+   public void testEntryFilter() throws Exception
+   {
+      final VirtualFile jar = roots.get(0);
+      final JavaZipFileSystem fileSystem = new JavaZipFileSystem(new File(getResource("/vfs/test/jar1.jar").toURI()), provider.createTempDir("test"));
+      try
+      {
+         final BloomFilter filter = fileSystem.getEntryFilter();
+         assertSame(filter, fileSystem.getEntryFilter());
+         for (VirtualFile file : jar.getChildrenRecursively())
+            assertTrue(file.toString(), filter.mightContain(file.getPathNameRelativeTo(jar).toLowerCase()));
+      }
+      finally
+      {
+         VFSUtils.safeClose(fileSystem);
+      }
+   }
+
+   public void testSubmountsDisableFilter() throws Exception
+   {
+      final VirtualFile jar = roots.get(0);
+      final VirtualFile nested = getVirtualFile("/vfs/test/outer.jar");
+      final VirtualFile mountPoint = jar.getChild("nested.jar");
+      final ResourceLocator locator = new ResourceLocator(roots.subList(0, 1));
+      assertNull(locator.getResource("nested.jar/META-INF/MANIFEST.MF"));
+      final Closeable mount = VFS.mountZip(nested, mountPoint, provider);
+      try
+      {
+         assertEquals(mountPoint.getChild("META-INF/MANIFEST.MF"), locator.getResource("nested.jar/META-INF/MANIFEST.MF"));
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+      assertNull(locator.getResource("nested.jar/META-INF/MANIFEST.MF"));
+   }
+
+   private void resetLookups()
+   {
+      for (CountingFileSystem archive : archives)
+         archive.resetLookups();
+   }
+
+   private List<VirtualFile> probe(String path)
+   {
+      final List<VirtualFile> found = new ArrayList<VirtualFile>();
+      for (VirtualFile root : roots)
+      {
+         final VirtualFile file = root.getChild(path);
+         if (file.exists())
+            found.add(file);
+      }
+      return found;
+   }
+}
@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.jboss.test.BaseTestCase;
+import org.jboss.vfs.TempDir;
+import org.jboss.vfs.TempFileProvider;
+
+/**
+ * Test for the deletion of temp directories by {@link TempFileProvider}
+ */
+public class TempFileProviderTestCase extends BaseTestCase
+{
+   private ScheduledThreadPoolExecutor executor;
+
+   public TempFileProviderTestCase(String name)
+   {
+      super(name);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      executor = new ScheduledThreadPoolExecutor(2);
+   }
+
+   protected void tearDown() throws Exception
+   {
+      executor.shutdownNow();
+      super.tearDown();
+   }
+
+   public void testDelete() throws Exception
+   {
+      final TempFileProvider provider = TempFileProvider.create("test", executor);
+      try
+      {
+         final TempDir tempDir = provider.createTempDir("tree");
+         final File root = tempDir.getRoot();
+         populate(root, 3, 5);
+         tempDir.close();
+         assertFalse(root.exists());
+         assertEquals(0, provider.getPendingDeleteCount());
+         assertEquals(0L, provider.getDeletedFileCount());
+      }
+      finally
+      {
+         provider.close();
+      }
+   }
+
+   public void testDeleteInBackground() throws Exception
+   {
+      final TempFileProvider provider = TempFileProvider.create("test", executor, true);
+      try
+      {
+         final TempDir tempDir = provider.createTempDir("tree");
+         final File root = tempDir.getRoot();
+         final File providerRoot = root.getParentFile();
+         final int count = populate(root, 3, 5);
+         tempDir.close();
+         // the name is free at once
+         assertFalse(root.exists());
+         awaitDeletes(provider);
+         assertEquals(count + 1, provider.getDeletedFileCount());
+         assertEquals(0, providerRoot.list().length);
+      }
+      finally
+      {
+         provider.close();
+      }
+   }
+
+   public void testCloseInBackground() throws Exception
+   {
+      final TempFileProvider provider = TempFileProvider.create("test", executor, true);
+      final TempDir tempDir = provider.createTempDir("tree");
+      final File providerRoot = tempDir.getRoot().getParentFile();
+      final int count = populate(tempDir.getRoot(), 2, 4);
+      provider.close();
+      assertFalse(providerRoot.exists());
+      awaitDeletes(provider);
+      // the provider directory, the temp directory and its contents
+      assertEquals(count + 2, provider.getDeletedFileCount());
+   }
+
+   private static void awaitDeletes(TempFileProvider provider) throws InterruptedException
+   {
+      for (int i = 0; i < 1000 && provider.getPendingDeleteCount() > 0; i++)
+         Thread.sleep(10L);
+      assertEquals(0, provider.getPendingDeleteCount());
+   }
+
+   /**
+    * Fill a directory with a tree of the given depth, each directory holding the given number of files and
+    * subdirectories.
+    *
+    * @return the number of files and directories created
+    */
+   private static int populate(File directory, int depth, int width) throws Exception
+   {
+      int count = 0;
+      for (int i = 0; i < width; i++)
+      {
+         final FileOutputStream out = new FileOutputStream(new File(directory, "file" + i));
+         out.write(i);
+         out.close();
+         count++;
+         if (depth > 1)
+         {
+            final File child = new File(directory, "dir" + i);
+            assertTrue(child.mkdir());
+            count += 1 + populate(child, depth - 1, width);
+         }
+      }
+      return count;
+   }
+}
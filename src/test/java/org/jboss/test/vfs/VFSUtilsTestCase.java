@@ -22,10 +22,23 @@
 package org.jboss.test.vfs;
 
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
 
+import org.jboss.vfs.TempDir;
 import org.jboss.vfs.TempFileProvider;
 import org.jboss.vfs.VFS;
 import org.jboss.vfs.VFSUtils;
@@ -61,6 +74,387 @@ public class VFSUtilsTestCase extends AbstractVFSTest
       }
    }
    
+   @Test
+   public void testCopyChildrenRecursiveInParallel() throws Exception
+   {
+      final ExecutorService executor = Executors.newFixedThreadPool(4);
+      final VirtualFile directory = getVirtualFile("/vfs/test");
+      final VirtualFile archive = directory.getChild("jar1.jar");
+      final Closeable mount = VFS.mountZip(archive, archive, provider);
+      try
+      {
+         // an exploded directory and a mounted archive
+         for (VirtualFile original : new VirtualFile[] {directory.getChild("jar1"), archive})
+         {
+            final VirtualFile target = VFS.getChild("/target-parallel");
+            final Closeable handle = VFS.mountTemp(target, provider);
+            try
+            {
+               VFSUtils.copyChildrenRecursive(original, target, executor);
+               assertChildren(original, target);
+            }
+            finally
+            {
+               VFSUtils.safeClose(handle);
+            }
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void testRecursiveCopyInParallel() throws Exception
+   {
+      final ExecutorService executor = Executors.newFixedThreadPool(4);
+      final VirtualFile original = getVirtualFile("/vfs/test/unpacked-outer.jar");
+      final VirtualFile target = VFS.getChild("/target-copy");
+      final Closeable handle = VFS.mountTemp(target, provider);
+      try
+      {
+         VFSUtils.recursiveCopy(original, target, executor);
+         assertChildren(original, target.getChild(original.getName()));
+         final File copy = target.getChild("copy").getPhysicalFile();
+         assertTrue(copy.mkdir());
+         VFSUtils.recursiveCopy(original.getPhysicalFile(), copy, executor);
+         assertChildren(original, target.getChild("copy").getChild(original.getName()));
+         // a rejecting executor leaves all the work to the calling thread
+         executor.shutdown();
+         assertTrue(target.getChild("again").getPhysicalFile().mkdir());
+         VFSUtils.recursiveCopy(original, target.getChild("again").getPhysicalFile(), executor);
+         assertChildren(original, target.getChild("again").getChild(original.getName()));
+      }
+      finally
+      {
+         VFSUtils.safeClose(handle);
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void testUnzipInParallel() throws Exception
+   {
+      final ExecutorService executor = Executors.newFixedThreadPool(4);
+      final TempDir tempDir = provider.createTempDir("unzip");
+      try
+      {
+         final File generated = tempDir.getFile("generated.jar");
+         writeArchive(generated);
+         final File[] archives = {
+               getVirtualFile("/vfs/test/jar1.jar").getPhysicalFile(),
+               getVirtualFile("/vfs/test/with-metadata.jar").getPhysicalFile(),
+               generated
+         };
+         for (File archive : archives)
+         {
+            final File expanded = tempDir.getFile(archive.getName() + "-expanded");
+            assertTrue(expanded.mkdir());
+            VFSUtils.unzip(archive, expanded, executor);
+            assertExpanded(archive, expanded);
+         }
+         // a rejecting executor leaves all the work to the calling thread
+         final ExecutorService shutdown = Executors.newSingleThreadExecutor();
+         shutdown.shutdown();
+         final VirtualFile target = VFS.getChild("/unzip-expanded");
+         final Closeable handle = VFS.mountZipExpanded(generated, target, provider, shutdown);
+         try
+         {
+            assertTrue(target.getChild("large/stored.bin").isFile());
+            assertEquals(LARGE_SIZE, target.getChild("large/deflated.bin").getSize());
+            assertTrue(target.getChild("empty/").isDirectory());
+         }
+         finally
+         {
+            VFSUtils.safeClose(handle);
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(tempDir);
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void testUnzipStream() throws Exception
+   {
+      final TempDir tempDir = provider.createTempDir("unzip-stream");
+      try
+      {
+         final File generated = tempDir.getFile("generated.jar");
+         writeArchive(generated);
+         for (File archive : new File[] {getVirtualFile("/vfs/test/with-metadata.jar").getPhysicalFile(), generated})
+         {
+            final File expanded = tempDir.getFile(archive.getName() + "-expanded");
+            assertTrue(expanded.mkdir());
+            final InputStream is = new FileInputStream(archive);
+            try
+            {
+               VFSUtils.unzip(is, expanded);
+            }
+            finally
+            {
+               VFSUtils.safeClose(is);
+            }
+            assertExpanded(archive, expanded);
+         }
+         // data in front of the archive has to be read through the central directory
+         final File prefixed = tempDir.getFile("prefixed.jar");
+         final OutputStream os = new FileOutputStream(prefixed);
+         try
+         {
+            os.write("#!/bin/sh\n".getBytes("UTF-8"));
+            VFSUtils.copyStreamAndClose(new FileInputStream(generated), os);
+         }
+         finally
+         {
+            VFSUtils.safeClose(os);
+         }
+         for (File archive : new File[] {generated, prefixed})
+         {
+            final VirtualFile target = VFS.getChild("/unzip-stream-" + archive.getName());
+            final Closeable handle = VFS.mountZipExpanded(new FileInputStream(archive), archive.getName(), target, provider);
+            try
+            {
+               assertGeneratedArchive(target);
+            }
+            finally
+            {
+               VFSUtils.safeClose(handle);
+            }
+            // a virtual file which starts with an entry is expanded as a stream
+            final Closeable streamed = VFS.mountZipExpanded(VFS.getChild(archive.getPath()), target, provider);
+            try
+            {
+               assertGeneratedArchive(target);
+            }
+            finally
+            {
+               VFSUtils.safeClose(streamed);
+            }
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(tempDir);
+      }
+   }
+
+   @Test
+   public void testUnzipStreamStoredWithDataDescriptor() throws Exception
+   {
+      final TempDir tempDir = provider.createTempDir("unzip-descriptor");
+      try
+      {
+         final File archive = tempDir.getFile("descriptor.jar");
+         writeStoredWithDataDescriptor(archive);
+         final File expanded = tempDir.getFile("expanded");
+         assertTrue(expanded.mkdir());
+         final InputStream is = new FileInputStream(archive);
+         try
+         {
+            VFSUtils.unzip(is, expanded);
+            fail("Stored entries with a data descriptor cannot be expanded as a stream");
+         }
+         catch (ZipException expected)
+         {
+         }
+         finally
+         {
+            VFSUtils.safeClose(is);
+         }
+         final VirtualFile target = VFS.getChild("/unzip-descriptor");
+         final Closeable handle = VFS.mountZipExpanded(new FileInputStream(archive), archive.getName(), target, provider);
+         try
+         {
+            assertDataDescriptorArchive(target);
+         }
+         finally
+         {
+            VFSUtils.safeClose(handle);
+         }
+         // the stream fails part way, so the archive is stored and expanded again
+         final Closeable retried = VFS.mountZipExpanded(VFS.getChild(archive.getPath()), target, provider);
+         try
+         {
+            assertDataDescriptorArchive(target);
+         }
+         finally
+         {
+            VFSUtils.safeClose(retried);
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(tempDir);
+      }
+   }
+
+   private static void assertGeneratedArchive(VirtualFile target)
+   {
+      assertEquals(LARGE_SIZE, target.getChild("large/stored.bin").getSize());
+      assertEquals(LARGE_SIZE, target.getChild("large/deflated.bin").getSize());
+      assertEquals(8, target.getChild("small").getChildren().size());
+      assertFalse(target.getChildren().toString(), target.getChildren().toString().contains(".tmp"));
+   }
+
+   private void assertDataDescriptorArchive(VirtualFile target) throws IOException
+   {
+      assertEquals(2, target.getChildren().size());
+      assertEquals("first", new String(getContent(target.getChild("first.txt")), "UTF-8"));
+      assertEquals("stored with a data descriptor", new String(getContent(target.getChild("stored.txt")), "UTF-8"));
+   }
+
+   private void assertExpanded(File archive, File expanded) throws IOException
+   {
+      final VirtualFile mountPoint = VFS.getChild("/unzip-" + archive.getName());
+      final Closeable mount = VFS.mountZip(archive, mountPoint, provider);
+      try
+      {
+         final VirtualFile target = VFS.getChild("/unzip-target");
+         final Closeable handle = VFS.mountReal(expanded, target);
+         try
+         {
+            assertChildren(mountPoint, target);
+         }
+         finally
+         {
+            VFSUtils.safeClose(handle);
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+
+   private static final int LARGE_SIZE = 1024 * 1024;
+
+   private static void writeArchive(File file) throws IOException
+   {
+      final byte[] large = new byte[LARGE_SIZE];
+      new Random(42L).nextBytes(large);
+      final CRC32 crc = new CRC32();
+      crc.update(large);
+      final ZipOutputStream os = new ZipOutputStream(new FileOutputStream(file));
+      try
+      {
+         // deflated entries are written with data descriptors
+         os.putNextEntry(new ZipEntry("empty/"));
+         os.putNextEntry(new ZipEntry("large/deflated.bin"));
+         os.write(large);
+         final ZipEntry stored = new ZipEntry("large/stored.bin");
+         stored.setMethod(ZipEntry.STORED);
+         stored.setSize(large.length);
+         stored.setCrc(crc.getValue());
+         os.putNextEntry(stored);
+         os.write(large);
+         for (int i = 0; i < 500; i++)
+         {
+            os.putNextEntry(new ZipEntry("small/dir" + (i % 7) + "/file" + i + ".txt"));
+            os.write(("file " + i).getBytes("UTF-8"));
+         }
+         os.putNextEntry(new ZipEntry("small/empty.txt"));
+         os.close();
+      }
+      finally
+      {
+         VFSUtils.safeClose(os);
+      }
+   }
+
+   /**
+    * Write an archive with a plain stored entry followed by a stored entry whose CRC and sizes follow its data in a
+    * data descriptor.  ZipOutputStream only writes data descriptors for deflated entries.
+    */
+   private static void writeStoredWithDataDescriptor(File file) throws IOException
+   {
+      final String[] names = {"first.txt", "stored.txt"};
+      final String[] contents = {"first", "stored with a data descriptor"};
+      final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+      final ByteArrayOutputStream central = new ByteArrayOutputStream();
+      for (int i = 0; i < names.length; i++)
+      {
+         final byte[] name = names[i].getBytes("UTF-8");
+         final byte[] data = contents[i].getBytes("UTF-8");
+         final CRC32 crc = new CRC32();
+         crc.update(data);
+         final boolean descriptor = i == 1;
+         final int offset = zip.size();
+         writeInt(zip, 0x04034b50);
+         writeShort(zip, 10);
+         writeShort(zip, descriptor ? 0x08 : 0);
+         writeShort(zip, ZipEntry.STORED);
+         writeInt(zip, 0);
+         writeInt(zip, descriptor ? 0 : (int) crc.getValue());
+         writeInt(zip, descriptor ? 0 : data.length);
+         writeInt(zip, descriptor ? 0 : data.length);
+         writeShort(zip, name.length);
+         writeShort(zip, 0);
+         zip.write(name);
+         zip.write(data);
+         if (descriptor)
+         {
+            writeInt(zip, 0x08074b50);
+            writeInt(zip, (int) crc.getValue());
+            writeInt(zip, data.length);
+            writeInt(zip, data.length);
+         }
+         writeInt(central, 0x02014b50);
+         writeShort(central, 10);
+         writeShort(central, 10);
+         writeShort(central, descriptor ? 0x08 : 0);
+         writeShort(central, ZipEntry.STORED);
+         writeInt(central, 0);
+         writeInt(central, (int) crc.getValue());
+         writeInt(central, data.length);
+         writeInt(central, data.length);
+         writeShort(central, name.length);
+         writeShort(central, 0);
+         writeShort(central, 0);
+         writeShort(central, 0);
+         writeShort(central, 0);
+         writeInt(central, 0);
+         writeInt(central, offset);
+         central.write(name);
+      }
+      final int centralOffset = zip.size();
+      central.writeTo(zip);
+      writeInt(zip, 0x06054b50);
+      writeShort(zip, 0);
+      writeShort(zip, 0);
+      writeShort(zip, names.length);
+      writeShort(zip, names.length);
+      writeInt(zip, central.size());
+      writeInt(zip, centralOffset);
+      writeShort(zip, 0);
+      final OutputStream os = new FileOutputStream(file);
+      try
+      {
+         zip.writeTo(os);
+         os.close();
+      }
+      finally
+      {
+         VFSUtils.safeClose(os);
+      }
+   }
+
+   private static void writeShort(ByteArrayOutputStream os, int value)
+   {
+      os.write(value);
+      os.write(value >>> 8);
+   }
+
+   private static void writeInt(ByteArrayOutputStream os, int value)
+   {
+      writeShort(os, value);
+      writeShort(os, value >>> 16);
+   }
+
    private void assertChildren(VirtualFile original, VirtualFile target) throws ArrayComparisonFailure, IOException {
       assertEquals("Original and target must have the same numer of children", original.getChildren().size(), target.getChildren().size());
       for(VirtualFile child : original.getChildren()) {
@@ -0,0 +1,678 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jboss.test.vfs.support.PlainFileSystem;
+import org.jboss.vfs.ConcurrentVirtualFileVisitor;
+import org.jboss.vfs.EntryQuery;
+import org.jboss.vfs.FileAttributes;
+import org.jboss.vfs.TempDir;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualFileFilter;
+import org.jboss.vfs.VisitorAttributes;
+import org.jboss.vfs.spi.JavaZipFileSystem;
+import org.jboss.vfs.spi.RealFileSystem;
+import org.jboss.vfs.util.IncludeFileNameVirtualFileFilter;
+import org.jboss.vfs.util.SuffixMatchFilter;
+import org.jboss.vfs.util.SuffixesExcludeFilter;
+
+/**
+ * Tests of the {@link VirtualFile} path handling which do not depend on the mounted file systems.
+ */
+public class VirtualFileTestCase extends AbstractVFSTest
+{
+   public VirtualFileTestCase(String name)
+   {
+      super(name);
+   }
+
+   public void testGetChildEquality() throws Exception
+   {
+      final VirtualFile first = VFS.getChild("/vfs-test/a/b/c.txt");
+      final VirtualFile second = VFS.getChild("/vfs-test/a/./x/../b/c.txt");
+      assertEquals(first, second);
+      assertEquals(first.hashCode(), second.hashCode());
+      assertEquals(first.getParent(), second.getParent());
+      assertEquals("/vfs-test/a/b/c.txt", second.getPathName());
+      assertFalse(first.equals(VFS.getChild("/vfs-test/a/b/C.txt")));
+      if (VFS.CACHE_VIRTUAL_FILES)
+      {
+         assertSame(first, second);
+         assertSame(first.getParent(), second.getParent());
+         assertSame(first, VFS.getChild("/vfs-test/a").getChild("b").getChild("c.txt"));
+      }
+   }
+
+   public void testChildrenAreCanonical() throws Exception
+   {
+      final VirtualFile jar = getVirtualFile("/vfs/test/jar1");
+      final List<VirtualFile> children = jar.getChildren();
+      assertFalse(children.isEmpty());
+      for (VirtualFile child : children)
+      {
+         final VirtualFile resolved = jar.getChild(child.getName());
+         assertEquals(child, resolved);
+         if (VFS.CACHE_VIRTUAL_FILES)
+            assertSame(child, resolved);
+      }
+   }
+
+   public void testSerializationResolvesCanonical() throws Exception
+   {
+      final VirtualFile file = getVirtualFile("/vfs/test/jar1.jar");
+      final VirtualFile copy = serializeDeserialize(file, VirtualFile.class);
+      assertEquals(file, copy);
+      assertEquals(file.getParent(), copy.getParent());
+      if (VFS.CACHE_VIRTUAL_FILES)
+         assertSame(file, copy);
+   }
+
+   public void testChildCachePurgesUnreferencedChildren() throws Exception
+   {
+      if (! VFS.CACHE_VIRTUAL_FILES)
+         return;
+      final VirtualFile parent = VFS.getChild("/vfs-test/purge");
+      final WeakReference<VirtualFile> reference = new WeakReference<VirtualFile>(parent.getChild("child"));
+      for (int i = 0; i < 10000; i++)
+         parent.getChild("child" + i);
+      for (int i = 0; i < 50 && (reference.get() != null || childCacheSize(parent) > 100); i++)
+      {
+         System.gc();
+         Thread.sleep(20L);
+         // each lookup drops the entries of the children collected so far
+         parent.getChild("probe");
+      }
+      assertNull("The cache must not keep unreferenced children", reference.get());
+      assertTrue("The cache must drop collected children", childCacheSize(parent) <= 100);
+      final VirtualFile child = parent.getChild("child");
+      assertSame(child, parent.getChild("child"));
+   }
+
+   private static int childCacheSize(VirtualFile file) throws Exception
+   {
+      final Field cacheField = VirtualFile.class.getDeclaredField("childCache");
+      cacheField.setAccessible(true);
+      final Object cache = cacheField.get(file);
+      final Field childrenField = cache.getClass().getDeclaredField("children");
+      childrenField.setAccessible(true);
+      return ((Map<?, ?>) childrenField.get(cache)).size();
+   }
+
+   public void testPathNameRelativeTo() throws Exception
+   {
+      final VirtualFile root = VFS.getRootVirtualFile();
+      final VirtualFile base = VFS.getChild("/vfs-test/a");
+      final VirtualFile file = base.getChild("b/c.txt");
+      assertEquals("/vfs-test/a/b/c.txt", file.getPathName());
+      assertEquals("b/c.txt", file.getPathNameRelativeTo(base));
+      assertEquals("c.txt", file.getPathNameRelativeTo(file.getParent()));
+      assertEquals("", file.getPathNameRelativeTo(file));
+      assertEquals("vfs-test/a/b/c.txt", file.getPathNameRelativeTo(root));
+
+      final StringBuilder builder = new StringBuilder("prefix:");
+      file.getPathNameRelativeTo(base, builder);
+      assertEquals("prefix:b/c.txt", builder.toString());
+
+      try
+      {
+         file.getPathNameRelativeTo(VFS.getChild("/vfs-test/b"));
+         fail("Should not be able to get a path relative to a non-ancestor");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         root.getPathNameRelativeTo(root);
+         fail("Should not be able to get a path relative from the root");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   public void testAttributes() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test/jar1");
+      assertAttributes(directory);
+      for (VirtualFile child : directory.getChildrenRecursively())
+         assertAttributes(child);
+      assertAttributes(directory.getChild("missing.txt"));
+      assertFalse(directory.getChild("missing.txt").getAttributes().exists());
+
+      final VirtualFile jar = getVirtualFile("/vfs/test/jar1.jar");
+      final Closeable mount = VFS.mountZip(jar, jar, provider);
+      try
+      {
+         assertAttributes(jar);
+         for (VirtualFile child : jar.getChildrenRecursively())
+            assertAttributes(child);
+         assertAttributes(jar.getChild("missing.txt"));
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+
+   public void testVisitorMountingDuringVisit() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test");
+      final VirtualFile jar = directory.getChild("jar1.jar");
+      final VirtualFile manifest = jar.getChild("META-INF/MANIFEST.MF");
+      final ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         MountingVisitor visitor = new MountingVisitor(jar);
+         try
+         {
+            directory.visit(visitor);
+            assertTrue(visitor.visited.contains(manifest));
+         }
+         finally
+         {
+            VFSUtils.safeClose(visitor.mounts);
+         }
+
+         visitor = new MountingVisitor(jar);
+         try
+         {
+            directory.visit(visitor, executor);
+            assertTrue(visitor.visited.contains(manifest));
+         }
+         finally
+         {
+            VFSUtils.safeClose(visitor.mounts);
+         }
+
+         // the caller mounts the archive on the file it has just been handed
+         final List<Closeable> mounts = new ArrayList<Closeable>();
+         final List<VirtualFile> visited = new ArrayList<VirtualFile>();
+         try
+         {
+            for (VirtualFile file : directory.iterateChildrenRecursively(null))
+            {
+               visited.add(file);
+               if (file.equals(jar))
+                  mounts.add(VFS.mountZip(jar, jar, provider));
+            }
+            assertTrue(visited.contains(manifest));
+         }
+         finally
+         {
+            VFSUtils.safeClose(mounts);
+         }
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
+
+   private class MountingVisitor implements ConcurrentVirtualFileVisitor
+   {
+      private final VirtualFile archive;
+      private final List<VirtualFile> visited = Collections.synchronizedList(new ArrayList<VirtualFile>());
+      private final List<Closeable> mounts = Collections.synchronizedList(new ArrayList<Closeable>());
+
+      private MountingVisitor(VirtualFile archive)
+      {
+         this.archive = archive;
+      }
+
+      public VisitorAttributes getAttributes()
+      {
+         return VisitorAttributes.RECURSE;
+      }
+
+      public void visit(VirtualFile file)
+      {
+         visited.add(file);
+         if (file.equals(archive))
+         {
+            try
+            {
+               mounts.add(VFS.mountZip(file, file, provider));
+            }
+            catch (IOException e)
+            {
+               throw new RuntimeException(e);
+            }
+         }
+      }
+   }
+
+   public void testAttributesOfPlainFileSystem() throws Exception
+   {
+      final File root = getVirtualFile("/vfs/test/jar1").getPhysicalFile();
+      final VirtualFile mountPoint = VFS.getChild("/plain-jar1");
+      final Closeable mount = VFS.mount(mountPoint, new PlainFileSystem(new RealFileSystem(root)));
+      try
+      {
+         assertAttributes(mountPoint);
+         final List<VirtualFile> children = mountPoint.getChildrenRecursively();
+         assertFalse(children.isEmpty());
+         for (VirtualFile child : children)
+            assertAttributes(child);
+         assertFalse(mountPoint.getChild("missing.txt").getAttributes().exists());
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+
+   private void assertAttributes(VirtualFile file)
+   {
+      final FileAttributes attributes = file.getAttributes();
+      assertEquals(file + " exists", file.exists(), attributes.exists());
+      assertEquals(file + " isFile", file.isFile(), attributes.isFile());
+      assertEquals(file + " isDirectory", file.isDirectory(), attributes.isDirectory());
+      assertEquals(file + " size", file.getSize(), attributes.getSize());
+      assertEquals(file + " lastModified", file.getLastModified(), attributes.getLastModified());
+   }
+
+   public void testVisitUsesMountedAttributes() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test");
+      final VirtualFile jar = directory.getChild("jar1.jar");
+      final Closeable mount = VFS.mountZip(jar, jar, provider);
+      try
+      {
+         final List<VirtualFile> expected = new ArrayList<VirtualFile>();
+         collectLeaves(directory, expected);
+         final List<VirtualFile> leaves = directory.getChildrenRecursively(new VirtualFileFilter()
+         {
+            public boolean accepts(VirtualFile file)
+            {
+               return file.isFile();
+            }
+         });
+         assertEquals(new HashSet<VirtualFile>(expected), new HashSet<VirtualFile>(leaves));
+         assertTrue(leaves.contains(jar.getChild("META-INF/MANIFEST.MF")));
+         assertFalse(leaves.contains(jar));
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+
+   private void collectLeaves(VirtualFile directory, List<VirtualFile> leaves)
+   {
+      for (VirtualFile child : directory.getChildren())
+      {
+         if (child.isDirectory())
+            collectLeaves(child, leaves);
+         else if (child.isFile())
+            leaves.add(child);
+      }
+   }
+
+   public void testConcurrentVisit() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test");
+      final List<Closeable> mounts = new ArrayList<Closeable>();
+      for (String name : new String[] {"jar1.jar", "outer.jar", "simple.ear"})
+         mounts.add(VFS.mountZip(directory.getChild(name), directory.getChild(name), provider));
+      final ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         final List<VirtualFile> expected = directory.getChildrenRecursively();
+         final List<VirtualFile> actual = directory.getChildrenRecursively(null, executor);
+         assertEquals(expected.size(), actual.size());
+         assertEquals(new HashSet<VirtualFile>(expected), new HashSet<VirtualFile>(actual));
+
+         // the calling thread completes the walk on its own if the executor refuses the work
+         executor.shutdown();
+         assertEquals(new HashSet<VirtualFile>(expected), new HashSet<VirtualFile>(directory.getChildrenRecursively(null, executor)));
+      }
+      finally
+      {
+         executor.shutdownNow();
+         VFSUtils.safeClose(mounts);
+      }
+   }
+
+   public void testConcurrentVisitFailure() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test");
+      final ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         directory.getChildrenRecursively(new VirtualFileFilter()
+         {
+            public boolean accepts(VirtualFile file)
+            {
+               if (file.getName().equals("jar1.jar"))
+                  throw new IllegalStateException("Rejected " + file);
+               return true;
+            }
+         }, executor);
+         fail("The visitor failure should be rethrown");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   public void testIterateChildren() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test/jar1");
+      final List<VirtualFile> expected = directory.getChildrenRecursively();
+      final List<VirtualFile> actual = new ArrayList<VirtualFile>();
+      for (VirtualFile file : directory.iterateChildrenRecursively(null))
+         actual.add(file);
+      assertEquals(expected, actual);
+
+      final List<VirtualFile> children = new ArrayList<VirtualFile>();
+      for (VirtualFile file : directory.iterateChildren(null, VisitorAttributes.RECURSE, 1))
+         children.add(file);
+      assertEquals(new HashSet<VirtualFile>(directory.getChildren()), new HashSet<VirtualFile>(children));
+
+      final VisitorAttributes includeRoot = new VisitorAttributes();
+      includeRoot.setIncludeRoot(true);
+      final Iterator<VirtualFile> rootOnly = directory.iterateChildren(null, includeRoot, 0).iterator();
+      assertEquals(directory, rootOnly.next());
+      assertFalse(rootOnly.hasNext());
+   }
+
+   public void testIterateChildrenPruning() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test/jar1");
+      final VirtualFile metaInf = directory.getChild("META-INF");
+      final VisitorAttributes attributes = new VisitorAttributes();
+      attributes.setRecurseFilter(new VirtualFileFilter()
+      {
+         public boolean accepts(VirtualFile file)
+         {
+            return ! file.equals(metaInf);
+         }
+      });
+      boolean sawMetaInf = false;
+      for (VirtualFile file : directory.iterateChildren(null, attributes, Integer.MAX_VALUE))
+      {
+         assertFalse("Pruned directory was entered: " + file, file.getParent().equals(metaInf));
+         sawMetaInf |= file.equals(metaInf);
+      }
+      assertTrue(sawMetaInf);
+   }
+
+   public void testIterateChildrenStopsEarly() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test/jar1");
+      final List<VirtualFile> entered = new ArrayList<VirtualFile>();
+      final VisitorAttributes attributes = new VisitorAttributes();
+      attributes.setRecurseFilter(new VirtualFileFilter()
+      {
+         public boolean accepts(VirtualFile file)
+         {
+            entered.add(file);
+            return true;
+         }
+      });
+      final Iterator<VirtualFile> iterator = directory.iterateChildren(new SuffixMatchFilter(".class", VisitorAttributes.DEFAULT), attributes, Integer.MAX_VALUE).iterator();
+      assertTrue(iterator.hasNext());
+      final VirtualFile first = iterator.next();
+      assertTrue(first.getName().endsWith(".class"));
+      final List<VirtualFile> all = directory.getChildrenRecursively(new SuffixMatchFilter(".class", VisitorAttributes.DEFAULT));
+      assertEquals(all.get(0), first);
+      // only the directories leading to the first match have been entered
+      for (VirtualFile file : entered)
+         assertTrue(file + " was entered", first.getPathName().startsWith(file.getPathName() + "/"));
+   }
+
+   public void testQueryPushdown() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test");
+      final List<Closeable> mounts = new ArrayList<Closeable>();
+      for (String name : new String[] {"jar1.jar", "outer.jar", "simple.ear"})
+         mounts.add(VFS.mountZip(directory.getChild(name), directory.getChild(name), provider));
+      // a nested mount inside a mounted archive
+      final VirtualFile nested = directory.getChild("outer.jar/jar2.jar");
+      mounts.add(VFS.mountZip(nested, nested, provider));
+      try
+      {
+         final List<VirtualFileFilter> filters = new ArrayList<VirtualFileFilter>();
+         filters.add(new SuffixMatchFilter(".class"));
+         filters.add(new SuffixMatchFilter(Arrays.asList(".MF", ".jar", "1.jar")));
+         filters.add(new SuffixesExcludeFilter(Arrays.asList(".class", ".xml")));
+         filters.add(new IncludeFileNameVirtualFileFilter("[A-Z].*"));
+         for (VirtualFileFilter filter : filters)
+         {
+            final List<VirtualFile> pushed = directory.getChildrenRecursively(filter);
+            final List<VirtualFile> visited = new ArrayList<VirtualFile>();
+            for (VirtualFile file : directory.iterateChildrenRecursively(filter))
+               visited.add(file);
+            assertFalse(filter.toString(), visited.isEmpty());
+            assertEquals(filter.toString(), visited.size(), pushed.size());
+            assertEquals(filter.toString(), new HashSet<VirtualFile>(visited), new HashSet<VirtualFile>(pushed));
+         }
+         assertTrue(directory.getChildrenRecursively(new SuffixMatchFilter(".class")).contains(nested.getChild("org/jboss/test/vfs/support/jar2/ClassInJar2.class")));
+      }
+      finally
+      {
+         VFSUtils.safeClose(mounts);
+      }
+   }
+
+   public void testPathFile() throws Exception
+   {
+      final VirtualFile file = getVirtualFile("/vfs/test/jar1.jar");
+      assertEquals(new File(file.getPathName()), file.getPathFile());
+      assertSame(file.getPathFile(), file.getPathFile());
+      // the root file system hands out the same instance
+      assertSame(file.getPathFile(), file.getPhysicalFile());
+   }
+
+   public void testChannels() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test");
+      final VirtualFile archive = directory.getChild("jar1.jar");
+      final Closeable mount = VFS.mountZip(archive, archive, provider);
+      try
+      {
+         // a real file and an entry which has to be copied out of its archive
+         for (VirtualFile file : new VirtualFile[] {directory.getChild("jar2.jar"), archive.getChild("META-INF/MANIFEST.MF")})
+         {
+            final byte[] expected = getContent(file);
+            assertEquals(ByteBuffer.wrap(expected), file.getContents());
+            assertEquals(ByteBuffer.wrap(expected, 2, expected.length - 3), file.map(2L, expected.length - 3));
+            final FileChannel channel = file.openChannel();
+            try
+            {
+               assertEquals(expected.length, channel.size());
+               final ByteBuffer buffer = ByteBuffer.allocate(4);
+               assertEquals(4, channel.read(buffer, 1L));
+               buffer.flip();
+               assertEquals(ByteBuffer.wrap(expected, 1, 4), buffer);
+               assertEquals(0L, channel.position());
+            }
+            finally
+            {
+               channel.close();
+            }
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+
+   public void testTransferTo() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test");
+      final VirtualFile archive = directory.getChild("with-metadata.jar");
+      final VirtualFile mountPoint = VFS.getChild("/transfer-test");
+      final JavaZipFileSystem fileSystem = new JavaZipFileSystem(archive.getPhysicalFile(), provider.createTempDir("test"));
+      final Closeable mount = VFS.mount(mountPoint, fileSystem);
+      try
+      {
+         // stored entries, the archive itself and real files go straight to the channel
+         for (VirtualFile file : new VirtualFile[] {mountPoint.getChild("META-INF/some-data.xml"), mountPoint, archive})
+         {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final WritableByteChannel channel = Channels.newChannel(out);
+            final byte[] expected = getContent(file == mountPoint ? archive : file);
+            if (file != archive)
+               assertEquals(expected.length, fileSystem.transferTo(mountPoint, file, channel));
+            else
+               assertEquals(expected.length, file.transferTo(channel));
+            assertArrayEquals(expected, out.toByteArray());
+         }
+         // deflated entries are copied through a stream
+         final VirtualFile deflated = mountPoint.getChild("org/jboss/test/vfs/support/CommonClass.class");
+         final ByteArrayOutputStream out = new ByteArrayOutputStream();
+         assertEquals(-1L, fileSystem.transferTo(mountPoint, deflated, Channels.newChannel(out)));
+         assertEquals(0, out.size());
+         assertEquals(deflated.getSize(), deflated.transferTo(Channels.newChannel(out)));
+         assertArrayEquals(getContent(deflated), out.toByteArray());
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+
+   public void testTransferToSigned() throws Exception
+   {
+      final TempDir tempDir = provider.createTempDir("signed");
+      try
+      {
+         final File file = tempDir.getFile("signed.jar");
+         final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+         zip.setMethod(ZipOutputStream.STORED);
+         for (String name : new String[] {"META-INF/SIGNER.SF", "data.txt"})
+         {
+            final byte[] bytes = name.getBytes("UTF-8");
+            final CRC32 crc = new CRC32();
+            crc.update(bytes);
+            final ZipEntry entry = new ZipEntry(name);
+            entry.setSize(bytes.length);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(bytes);
+            zip.closeEntry();
+         }
+         zip.close();
+         final JavaZipFileSystem fileSystem = new JavaZipFileSystem(file, provider.createTempDir("test"));
+         final VirtualFile mountPoint = VFS.getChild("/transfer-signed-test");
+         final Closeable mount = VFS.mount(mountPoint, fileSystem);
+         try
+         {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(-1L, fileSystem.transferTo(mountPoint, mountPoint.getChild("data.txt"), Channels.newChannel(out)));
+            assertEquals(8L, mountPoint.getChild("data.txt").transferTo(Channels.newChannel(out)));
+            assertEquals("data.txt", out.toString("UTF-8"));
+         }
+         finally
+         {
+            VFSUtils.safeClose(mount);
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(tempDir);
+      }
+   }
+
+   public void testEntryQuery() throws Exception
+   {
+      assertTrue(EntryQuery.nameGlob("*.xml").matches("web.xml"));
+      assertEquals(Collections.singleton(".xml"), EntryQuery.nameGlob("*.xml").getNameSuffixes());
+      final EntryQuery glob = EntryQuery.nameGlob("web?*.x.ml");
+      assertTrue(glob.matches("web-app.x.ml"));
+      assertFalse(glob.matches("web.x.ml"));
+      assertFalse(glob.matches("web-appx.x.ml.bak"));
+      assertEquals(Collections.singleton(".x.ml"), glob.getNameSuffixes());
+      assertNull(EntryQuery.nameGlob("*.x*").getNameSuffixes());
+      assertNull(EntryQuery.nameGlob("*.jar*").getNameSuffixes());
+      final EntryQuery query = EntryQuery.and(EntryQuery.or(EntryQuery.nameSuffix(".xml"), EntryQuery.nameSuffix(".tld")), EntryQuery.not(EntryQuery.nameEquals("web.xml")));
+      assertTrue(query.matches("faces-config.xml"));
+      assertTrue(query.matches("c.tld"));
+      assertFalse(query.matches("web.xml"));
+      assertEquals(new HashSet<String>(Arrays.asList(".xml", ".tld")), query.getNameSuffixes());
+      assertFalse(EntryQuery.or().matches("anything"));
+   }
+
+   public void testFindChildren() throws Exception
+   {
+      final VirtualFile jar = getVirtualFile("/vfs/test/zipeinit.jar");
+      final Closeable mount = VFS.mountZip(jar, jar, provider);
+      try
+      {
+         final EntryQuery[] queries = {EntryQuery.nameSuffix(".class"), EntryQuery.nameSuffix(".mf"),
+               EntryQuery.nameSuffix("Test.class"), EntryQuery.nameGlob("*.jar*"), EntryQuery.nameSuffix(".missing")};
+         for (VirtualFile root : new VirtualFile[] {jar, jar.getChild("META-INF"), jar.getChild("org")})
+         {
+            for (EntryQuery query : queries)
+            {
+               final List<VirtualFile> expected = new ArrayList<VirtualFile>();
+               for (VirtualFile file : root.iterateChildrenRecursively(query.asFilter()))
+                  expected.add(file);
+               final List<VirtualFile> found = root.findChildren(query);
+               assertEquals(root + " " + query, expected.size(), found.size());
+               assertEquals(root + " " + query, new HashSet<VirtualFile>(expected), new HashSet<VirtualFile>(found));
+            }
+         }
+         assertFalse(jar.findChildren(EntryQuery.nameSuffix(".class")).isEmpty());
+         assertTrue(jar.getChild("META-INF/MANIFEST.MF").findChildren(EntryQuery.ALL).isEmpty());
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+}
@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs.support;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.spi.IndexedFileSystem;
+import org.jboss.vfs.util.BloomFilter;
+
+/**
+ * An indexed file system which counts the existence checks that reach it, so that tests can tell which lookups were
+ * ruled out by the entry filter before getting this far.
+ */
+public class CountingFileSystem extends PlainFileSystem implements IndexedFileSystem
+{
+   private final IndexedFileSystem delegate;
+   private final AtomicInteger lookups = new AtomicInteger();
+
+   public CountingFileSystem(IndexedFileSystem delegate)
+   {
+      super(delegate);
+      this.delegate = delegate;
+   }
+
+   public boolean exists(VirtualFile mountPoint, VirtualFile target)
+   {
+      lookups.incrementAndGet();
+      return super.exists(mountPoint, target);
+   }
+
+   public BloomFilter getEntryFilter()
+   {
+      return delegate.getEntryFilter();
+   }
+
+   public int getLookups()
+   {
+      return lookups.get();
+   }
+
+   public void resetLookups()
+   {
+      lookups.set(0);
+   }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.CodeSigner;
+import java.util.List;
+
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.spi.FileSystem;
+
+/**
+ * A file system which delegates to another one through the plain {@link FileSystem} interface only, as a file system
+ * written against the original SPI would, hiding any optional capabilities of the delegate.
+ */
+public class PlainFileSystem implements FileSystem
+{
+   private final FileSystem delegate;
+
+   public PlainFileSystem(FileSystem delegate)
+   {
+      this.delegate = delegate;
+   }
+
+   public File getFile(VirtualFile mountPoint, VirtualFile target) throws IOException
+   {
+      return delegate.getFile(mountPoint, target);
+   }
+
+   public InputStream openInputStream(VirtualFile mountPoint, VirtualFile target) throws IOException
+   {
+      return delegate.openInputStream(mountPoint, target);
+   }
+
+   public boolean isReadOnly()
+   {
+      return delegate.isReadOnly();
+   }
+
+   public boolean delete(VirtualFile mountPoint, VirtualFile target)
+   {
+      return delegate.delete(mountPoint, target);
+   }
+
+   public long getSize(VirtualFile mountPoint, VirtualFile target)
+   {
+      return delegate.getSize(mountPoint, target);
+   }
+
+   public long getLastModified(VirtualFile mountPoint, VirtualFile target)
+   {
+      return delegate.getLastModified(mountPoint, target);
+   }
+
+   public boolean exists(VirtualFile mountPoint, VirtualFile target)
+   {
+      return delegate.exists(mountPoint, target);
+   }
+
+   public boolean isFile(VirtualFile mountPoint, VirtualFile target)
+   {
+      return delegate.isFile(mountPoint, target);
+   }
+
+   public boolean isDirectory(VirtualFile mountPoint, VirtualFile target)
+   {
+      return delegate.isDirectory(mountPoint, target);
+   }
+
+   public List<String> getDirectoryEntries(VirtualFile mountPoint, VirtualFile target)
+   {
+      return delegate.getDirectoryEntries(mountPoint, target);
+   }
+
+   public CodeSigner[] getCodeSigners(VirtualFile mountPoint, VirtualFile target)
+   {
+      return delegate.getCodeSigners(mountPoint, target);
+   }
+
+   public void close() throws IOException
+   {
+      delegate.close();
+   }
+
+   public File getMountSource()
+   {
+      return delegate.getMountSource();
+   }
+}
@@ -0,0 +1,619 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs.support;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.jboss.vfs.TempDir;
+import org.jboss.vfs.TempFileProvider;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.util.LazyInputStream;
+import org.jboss.vfs.util.automount.Automounter;
+import org.jboss.vfs.util.automount.MountOwner;
+import org.jboss.vfs.util.automount.SimpleMountOwner;
+
+/**
+ * A multi-threaded stress and benchmark harness for the VFS.  A number of worker threads run a weighted mix of
+ * {@link Operation}s against a set of shared mounts for a fixed period, while the harness records per-operation
+ * throughput, a latency histogram and the monitor contention (blocked and waited counts and times) observed by the
+ * worker threads.
+ */
+public class VFSStressHarness
+{
+   /**
+    * The operations making up a workload.
+    */
+   public enum Operation
+   {
+      /** Mount an archive below a shared parent, resolve one entry and unmount it again */
+      MOUNT_UNMOUNT,
+      /** Resolve a known resource and a missing one below a shared mount */
+      RESOLVE,
+      /** List a directory below a shared mount */
+      LIST,
+      /** Get the physical file for a resource below a shared mount */
+      PHYSICAL_FILE,
+      /** Read a resource below a shared mount through a {@link LazyInputStream} */
+      LAZY_STREAM,
+      /** Automount an archive and clean up the owner again */
+      AUTOMOUNT,
+      /** Find a resource the way a class loader does, probing each root in turn until one has it */
+      CLASSLOAD
+   }
+
+   private final TempFileProvider provider;
+   private final Root[] roots;
+   private final File archive;
+
+   /**
+    * Create a new harness.
+    *
+    * @param provider the temp file provider used for mounts made by the workload
+    * @param roots the shared, already mounted roots to resolve, list and read resources from
+    * @param archive the archive to mount and automount
+    * @throws IOException if the shared roots cannot be scanned
+    */
+   public VFSStressHarness(TempFileProvider provider, List<VirtualFile> roots, File archive) throws IOException
+   {
+      if (roots == null || roots.isEmpty())
+         throw new IllegalArgumentException("No roots");
+      this.provider = provider;
+      this.archive = archive;
+      this.roots = new Root[roots.size()];
+      for (int i = 0; i < this.roots.length; i++)
+         this.roots[i] = new Root(roots.get(i));
+   }
+
+   /**
+    * Run a workload.
+    *
+    * @param threads the number of worker threads
+    * @param warmupMillis the time to run before measurements are recorded
+    * @param durationMillis the measured time
+    * @param weights the relative weight of each operation in the mix; operations not present are not run
+    * @return the report
+    * @throws Exception if the run is interrupted or the workload cannot be set up
+    */
+   public Report run(int threads, long warmupMillis, long durationMillis, Map<Operation, Integer> weights) throws Exception
+   {
+      final Operation[] mix = createMix(weights);
+      final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+      final boolean contention = threadBean.isThreadContentionMonitoringSupported();
+      if (contention)
+         threadBean.setThreadContentionMonitoringEnabled(true);
+
+      final TempDir scratch = provider.createTempDir("stress");
+      try
+      {
+         final Worker[] workers = new Worker[threads];
+         final CountDownLatch start = new CountDownLatch(1);
+         for (int i = 0; i < threads; i++)
+            workers[i] = new Worker(i, mix, start, contention ? threadBean : null, createAutomountTarget(scratch, i, weights));
+
+         final List<Thread> running = new ArrayList<Thread>(threads);
+         for (Worker worker : workers)
+         {
+            final Thread thread = new Thread(worker, "vfs-stress-" + worker.index);
+            thread.start();
+            running.add(thread);
+         }
+         final long begin = System.nanoTime();
+         final long measureFrom = begin + warmupMillis * 1000000L;
+         final long measureTo = measureFrom + durationMillis * 1000000L;
+         for (Worker worker : workers)
+         {
+            worker.measureFrom = measureFrom;
+            worker.measureTo = measureTo;
+         }
+         start.countDown();
+         for (Thread thread : running)
+            thread.join();
+         return new Report(threads, durationMillis, workers, contention);
+      }
+      finally
+      {
+         VFSUtils.safeClose(scratch);
+      }
+   }
+
+   private VirtualFile createAutomountTarget(TempDir scratch, int index, Map<Operation, Integer> weights) throws IOException
+   {
+      if (!weights.containsKey(Operation.AUTOMOUNT) || archive == null)
+         return null;
+      // every worker gets its own copy below a shared parent, so the registry is contended but never shared per entry
+      final InputStream is = new FileInputStream(archive);
+      final File copy = scratch.createFile("automount-" + index + ".jar", is);
+      return VFS.getChild(copy.getPath());
+   }
+
+   private static Operation[] createMix(Map<Operation, Integer> weights)
+   {
+      final List<Operation> mix = new ArrayList<Operation>();
+      for (Map.Entry<Operation, Integer> entry : weights.entrySet())
+      {
+         for (int i = 0; i < entry.getValue(); i++)
+            mix.add(entry.getKey());
+      }
+      if (mix.isEmpty())
+         throw new IllegalArgumentException("Empty operation mix");
+      return mix.toArray(new Operation[mix.size()]);
+   }
+
+   private static final class Root
+   {
+      private final VirtualFile file;
+      private final List<String> files = new ArrayList<String>();
+      private final List<String> directories = new ArrayList<String>();
+
+      private Root(VirtualFile file) throws IOException
+      {
+         this.file = file;
+         directories.add("");
+         for (VirtualFile child : file.getChildrenRecursively())
+         {
+            final String path = child.getPathNameRelativeTo(file);
+            if (child.isDirectory())
+               directories.add(path);
+            else
+               files.add(path);
+         }
+         if (files.isEmpty())
+            throw new IllegalArgumentException("No files below root " + file);
+      }
+   }
+
+   private final class Worker implements Runnable
+   {
+      private final int index;
+      private final Operation[] mix;
+      private final CountDownLatch start;
+      private final ThreadMXBean threadBean;
+      private final VirtualFile automountTarget;
+      private final Random random;
+      private final Map<Operation, Histogram> histograms = new EnumMap<Operation, Histogram>(Operation.class);
+      private final byte[] buffer = new byte[8192];
+      private final List<Throwable> errors = new ArrayList<Throwable>();
+      private volatile long measureFrom;
+      private volatile long measureTo;
+      private int errorCount;
+      private int sequence;
+      private long blockedCount;
+      private long blockedTime;
+      private long waitedCount;
+      private long waitedTime;
+
+      private Worker(int index, Operation[] mix, CountDownLatch start, ThreadMXBean threadBean, VirtualFile automountTarget)
+      {
+         this.index = index;
+         this.mix = mix;
+         this.start = start;
+         this.threadBean = threadBean;
+         this.automountTarget = automountTarget;
+         random = new Random(31L * index + 17L);
+         for (Operation operation : Operation.values())
+            histograms.put(operation, new Histogram());
+      }
+
+      public void run()
+      {
+         try
+         {
+            start.await();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            return;
+         }
+         long blockedBase = 0L, blockedTimeBase = 0L, waitedBase = 0L, waitedTimeBase = 0L;
+         boolean measuring = false;
+         for (;;)
+         {
+            final long now = System.nanoTime();
+            if (now >= measureTo)
+               break;
+            if (!measuring && now >= measureFrom)
+            {
+               measuring = true;
+               if (threadBean != null)
+               {
+                  final ThreadInfo info = threadBean.getThreadInfo(Thread.currentThread().getId());
+                  blockedBase = info.getBlockedCount();
+                  blockedTimeBase = info.getBlockedTime();
+                  waitedBase = info.getWaitedCount();
+                  waitedTimeBase = info.getWaitedTime();
+               }
+            }
+            final Operation operation = mix[random.nextInt(mix.length)];
+            final long begin = System.nanoTime();
+            try
+            {
+               execute(operation);
+            }
+            catch (Throwable t)
+            {
+               if (measuring)
+               {
+                  errorCount++;
+                  if (errors.size() < 5)
+                     errors.add(t);
+               }
+               continue;
+            }
+            if (measuring)
+               histograms.get(operation).record(System.nanoTime() - begin);
+         }
+         if (threadBean != null && measuring)
+         {
+            final ThreadInfo info = threadBean.getThreadInfo(Thread.currentThread().getId());
+            blockedCount = info.getBlockedCount() - blockedBase;
+            blockedTime = info.getBlockedTime() - blockedTimeBase;
+            waitedCount = info.getWaitedCount() - waitedBase;
+            waitedTime = info.getWaitedTime() - waitedTimeBase;
+         }
+      }
+
+      private void execute(Operation operation) throws IOException
+      {
+         switch (operation)
+         {
+            case MOUNT_UNMOUNT:
+            {
+               final VirtualFile mountPoint = VFS.getChild("/vfs-stress/mounts/" + index + "-" + sequence++);
+               final Closeable handle = VFS.mountZip(archive, mountPoint, provider);
+               try
+               {
+                  check(mountPoint.getChildren().size() > 0, mountPoint);
+               }
+               finally
+               {
+                  handle.close();
+               }
+               break;
+            }
+            case RESOLVE:
+            {
+               final Root root = randomRoot();
+               final String path = root.files.get(random.nextInt(root.files.size()));
+               final VirtualFile file = root.file.getChild(path);
+               check(file.exists() && file.isFile(), file);
+               file.getSize();
+               file.getLastModified();
+               check(!root.file.getChild(path + ".missing").exists(), file);
+               break;
+            }
+            case LIST:
+            {
+               final Root root = randomRoot();
+               final VirtualFile directory = root.file.getChild(root.directories.get(random.nextInt(root.directories.size())));
+               directory.getChildren();
+               break;
+            }
+            case PHYSICAL_FILE:
+            {
+               final VirtualFile file = randomFile();
+               check(file.getPhysicalFile() != null, file);
+               break;
+            }
+            case LAZY_STREAM:
+            {
+               final VirtualFile file = randomFile();
+               final InputStream is = new LazyInputStream(file);
+               try
+               {
+                  while (is.read(buffer) != -1)
+                  {
+                     // drain
+                  }
+               }
+               finally
+               {
+                  is.close();
+               }
+               break;
+            }
+            case AUTOMOUNT:
+            {
+               final MountOwner owner = new SimpleMountOwner(this);
+               Automounter.mount(owner, automountTarget);
+               try
+               {
+                  check(Automounter.isMounted(automountTarget), automountTarget);
+               }
+               finally
+               {
+                  Automounter.cleanup(owner);
+               }
+               break;
+            }
+            case CLASSLOAD:
+            {
+               final Root owner = randomRoot();
+               final String path = owner.files.get(random.nextInt(owner.files.size()));
+               VirtualFile found = null;
+               for (Root root : roots)
+               {
+                  final VirtualFile file = root.file.getChild(path);
+                  if (file.exists())
+                  {
+                     found = file;
+                     break;
+                  }
+               }
+               check(found != null, owner.file.getChild(path));
+               break;
+            }
+         }
+      }
+
+      private Root randomRoot()
+      {
+         return roots[random.nextInt(roots.length)];
+      }
+
+      private VirtualFile randomFile()
+      {
+         final Root root = randomRoot();
+         return root.file.getChild(root.files.get(random.nextInt(root.files.size())));
+      }
+
+      private void check(boolean condition, VirtualFile file) throws IOException
+      {
+         if (!condition)
+            throw new IOException("Unexpected state for " + file);
+      }
+   }
+
+   /**
+    * A log-linear latency histogram.  Values are bucketed by their power of two, with eight linear sub-buckets per
+    * power, which bounds the relative error of a reported percentile to 12.5%.
+    */
+   static final class Histogram
+   {
+      private static final int SUB_BITS = 3;
+      private static final int SUB_COUNT = 1 << SUB_BITS;
+
+      private final long[] counts = new long[64 * SUB_COUNT];
+      private long total;
+      private long max;
+      private long sum;
+
+      void record(long value)
+      {
+         if (value < 0L)
+            value = 0L;
+         counts[index(value)]++;
+         total++;
+         sum += value;
+         if (value > max)
+            max = value;
+      }
+
+      void add(Histogram other)
+      {
+         for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+         total += other.total;
+         sum += other.sum;
+         if (other.max > max)
+            max = other.max;
+      }
+
+      long getCount()
+      {
+         return total;
+      }
+
+      long getMax()
+      {
+         return max;
+      }
+
+      long getMean()
+      {
+         return total == 0L ? 0L : sum / total;
+      }
+
+      long getPercentile(double percentile)
+      {
+         if (total == 0L)
+            return 0L;
+         final long rank = (long) Math.ceil(total * percentile / 100.0);
+         long seen = 0L;
+         for (int i = 0; i < counts.length; i++)
+         {
+            seen += counts[i];
+            if (seen >= rank)
+               return Math.min(upperBound(i), max);
+         }
+         return max;
+      }
+
+      private static int index(long value)
+      {
+         if (value < SUB_COUNT)
+            return (int) value;
+         final int exponent = 63 - Long.numberOfLeadingZeros(value);
+         final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+         return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+      }
+
+      private static long upperBound(int index)
+      {
+         if (index < SUB_COUNT)
+            return index;
+         final int exponent = index / SUB_COUNT + SUB_BITS - 1;
+         final long sub = index % SUB_COUNT;
+         return ((SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1;
+      }
+   }
+
+   /**
+    * The result of a run.
+    */
+   public static final class Report
+   {
+      private final int threads;
+      private final long durationMillis;
+      private final boolean contentionMonitored;
+      private final Map<Operation, Histogram> histograms = new EnumMap<Operation, Histogram>(Operation.class);
+      private final List<Throwable> errors = new ArrayList<Throwable>();
+      private long errorCount;
+      private long blockedCount;
+      private long blockedTime;
+      private long waitedCount;
+      private long waitedTime;
+
+      private Report(int threads, long durationMillis, Worker[] workers, boolean contentionMonitored)
+      {
+         this.threads = threads;
+         this.durationMillis = durationMillis;
+         this.contentionMonitored = contentionMonitored;
+         for (Operation operation : Operation.values())
+            histograms.put(operation, new Histogram());
+         for (Worker worker : workers)
+         {
+            for (Operation operation : Operation.values())
+               histograms.get(operation).add(worker.histograms.get(operation));
+            errorCount += worker.errorCount;
+            errors.addAll(worker.errors);
+            blockedCount += worker.blockedCount;
+            blockedTime += worker.blockedTime;
+            waitedCount += worker.waitedCount;
+            waitedTime += worker.waitedTime;
+         }
+      }
+
+      /**
+       * Get the number of completed operations of the given type.
+       *
+       * @param operation the operation
+       * @return the number of completed operations
+       */
+      public long getCount(Operation operation)
+      {
+         return histograms.get(operation).getCount();
+      }
+
+      /**
+       * Get the throughput of the given operation type.
+       *
+       * @param operation the operation
+       * @return the completed operations per second
+       */
+      public double getThroughput(Operation operation)
+      {
+         return getCount(operation) * 1000.0 / durationMillis;
+      }
+
+      /**
+       * Get a latency percentile of the given operation type.
+       *
+       * @param operation the operation
+       * @param percentile the percentile, e.g. {@code 99.9}
+       * @return the latency in nanoseconds
+       */
+      public long getLatency(Operation operation, double percentile)
+      {
+         return histograms.get(operation).getPercentile(percentile);
+      }
+
+      /**
+       * Get the number of failed operations.
+       *
+       * @return the error count
+       */
+      public long getErrorCount()
+      {
+         return errorCount;
+      }
+
+      /**
+       * Get a sample of the errors which occurred.
+       *
+       * @return the errors
+       */
+      public List<Throwable> getErrors()
+      {
+         return Collections.unmodifiableList(errors);
+      }
+
+      /**
+       * Get the number of times the worker threads blocked entering a monitor, or -1 if contention monitoring is not
+       * supported by the JVM.
+       *
+       * @return the blocked count
+       */
+      public long getBlockedCount()
+      {
+         return contentionMonitored ? blockedCount : -1L;
+      }
+
+      /**
+       * Get the total time the worker threads spent blocked entering a monitor, or -1 if contention monitoring is not
+       * supported by the JVM.
+       *
+       * @return the blocked time in milliseconds
+       */
+      public long getBlockedTime()
+      {
+         return contentionMonitored ? blockedTime : -1L;
+      }
+
+      public String toString()
+      {
+         final StringBuilder builder = new StringBuilder();
+         builder.append(String.format("%d threads, %d ms, %d errors%n", threads, durationMillis, errorCount));
+         builder.append(String.format("%-14s %12s %12s %10s %10s %10s %10s %10s%n", "operation", "ops", "ops/s", "mean us", "p50 us", "p99 us", "p99.9 us", "max us"));
+         for (Operation operation : Operation.values())
+         {
+            final Histogram histogram = histograms.get(operation);
+            if (histogram.getCount() == 0L)
+               continue;
+            builder.append(String.format("%-14s %12d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation, histogram.getCount(), getThroughput(operation),
+                  histogram.getMean() / 1000.0, histogram.getPercentile(50) / 1000.0, histogram.getPercentile(99) / 1000.0,
+                  histogram.getPercentile(99.9) / 1000.0, histogram.getMax() / 1000.0));
+         }
+         if (contentionMonitored)
+            builder.append(String.format("monitor contention: blocked %d times / %d ms, waited %d times / %d ms%n", blockedCount, blockedTime, waitedCount, waitedTime));
+         else
+            builder.append(String.format("monitor contention: not supported by this JVM%n"));
+         return builder.toString();
+      }
+   }
+}
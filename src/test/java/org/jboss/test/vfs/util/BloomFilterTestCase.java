@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import org.jboss.vfs.util.BloomFilter;
+
+/**
+ * Test for {@link BloomFilter}
+ */
+public class BloomFilterTestCase extends TestCase
+{
+   public BloomFilterTestCase(String name)
+   {
+      super(name);
+   }
+
+   public void testNoFalseNegatives() throws Exception
+   {
+      final BloomFilter filter = new BloomFilter(10000, 0.01);
+      for (int i = 0; i < 10000; i++)
+         filter.add("org/jboss/Class" + i + ".class");
+      for (int i = 0; i < 10000; i++)
+      {
+         assertTrue(filter.mightContain("org/jboss/Class" + i + ".class"));
+         assertTrue(filter.mightContain("org/jboss/", "Class" + i + ".class"));
+      }
+   }
+
+   public void testFalsePositiveRate() throws Exception
+   {
+      final BloomFilter filter = new BloomFilter(10000, 0.01);
+      for (int i = 0; i < 10000; i++)
+         filter.add("org/jboss/Class" + i + ".class");
+      int falsePositives = 0;
+      for (int i = 0; i < 100000; i++)
+      {
+         if (filter.mightContain("org/jboss/Missing" + i + ".class"))
+            falsePositives++;
+      }
+      // 1% expected; allow for the variance of the hash functions
+      assertTrue("False positives: " + falsePositives, falsePositives < 2000);
+      assertTrue(filter.getBitCount() < 10000L * 12L);
+   }
+
+   public void testSerialization() throws Exception
+   {
+      final BloomFilter filter = new BloomFilter(100, 0.001);
+      for (int i = 0; i < 100; i++)
+         filter.add("entry" + i);
+      final ByteArrayOutputStream os = new ByteArrayOutputStream();
+      filter.writeTo(os);
+      final BloomFilter copy = BloomFilter.readFrom(new ByteArrayInputStream(os.toByteArray()));
+      assertEquals(filter.getBitCount(), copy.getBitCount());
+      assertEquals(filter.getHashCount(), copy.getHashCount());
+      for (int i = 0; i < 1000; i++)
+         assertEquals(filter.mightContain("entry" + i), copy.mightContain("entry" + i));
+
+      try
+      {
+         BloomFilter.readFrom(new ByteArrayInputStream(new byte[16]));
+         fail("Should not read a filter from garbage");
+      }
+      catch (IOException expected)
+      {
+      }
+   }
+}
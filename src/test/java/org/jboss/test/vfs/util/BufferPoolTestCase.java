@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.jboss.test.BaseTestCase;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.util.BufferPool;
+
+/**
+ * Test for {@link BufferPool}
+ */
+public class BufferPoolTestCase extends BaseTestCase
+{
+   public BufferPoolTestCase(String name)
+   {
+      super(name);
+   }
+
+   public void testReuse() throws Exception
+   {
+      final BufferPool pool = new BufferPool(1024, 4, false);
+      final ByteBuffer buffer = pool.take();
+      assertEquals(1024, buffer.capacity());
+      assertFalse(buffer.isDirect());
+      buffer.put((byte) 1);
+      pool.release(buffer);
+      final ByteBuffer again = pool.take();
+      assertSame(buffer, again);
+      assertEquals(0, again.position());
+      assertEquals(1024, again.limit());
+      // a buffer in use is not handed out twice
+      assertNotSame(again, pool.take());
+   }
+
+   public void testRelease() throws Exception
+   {
+      final BufferPool pool = new BufferPool(1024, 4, true);
+      assertTrue(pool.take().isDirect());
+      // foreign buffers are ignored
+      pool.release(ByteBuffer.allocate(1024));
+      pool.release(ByteBuffer.allocateDirect(512));
+      pool.release(null);
+      assertTrue(pool.take().isDirect());
+      // a released buffer is handed out once
+      final ByteBuffer buffer = pool.take();
+      pool.release(buffer);
+      assertSame(buffer, pool.take());
+      assertNotSame(buffer, pool.take());
+      // an empty pool allocates every time
+      final BufferPool none = new BufferPool(16, 0, false);
+      final ByteBuffer first = none.take();
+      none.release(first);
+      assertNotSame(first, none.take());
+   }
+
+   public void testCopyStream() throws Exception
+   {
+      final byte[] data = new byte[VFSUtils.DEFAULT_BUFFER_SIZE * 2 + 17];
+      for (int i = 0; i < data.length; i++)
+         data[i] = (byte) i;
+      for (int bufferSize : new int[] {7, VFSUtils.DEFAULT_BUFFER_SIZE, VFSUtils.DEFAULT_BUFFER_SIZE * 3})
+      {
+         final ByteArrayOutputStream out = new ByteArrayOutputStream();
+         VFSUtils.copyStream(new ByteArrayInputStream(data), out, bufferSize);
+         assertTrue(Arrays.equals(data, out.toByteArray()));
+      }
+   }
+
+   /**
+    * Measures the memory allocated per copy of a small stream, where the buffer dominates.  Only runs on virtual
+    * machines which can report the memory allocated by a thread.
+    */
+   public void testCopyAllocation() throws Exception
+   {
+      final Object threads = ManagementFactory.getThreadMXBean();
+      final Method allocatedBytes;
+      try
+      {
+         allocatedBytes = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+      }
+      catch (ClassNotFoundException e)
+      {
+         getLog().info("Thread allocation counters not available, skipping");
+         return;
+      }
+      final long thread = Thread.currentThread().getId();
+      final byte[] data = new byte[1024];
+      final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+      final int copies = 10000;
+      for (int round = 0; round < 3; round++)
+      {
+         final long before = ((Long) allocatedBytes.invoke(threads, Long.valueOf(thread))).longValue();
+         for (int i = 0; i < copies; i++)
+         {
+            out.reset();
+            VFSUtils.copyStream(new ByteArrayInputStream(data), out);
+         }
+         final long perCopy = (((Long) allocatedBytes.invoke(threads, Long.valueOf(thread))).longValue() - before) / copies;
+         getLog().info("Allocated " + perCopy + " bytes per 1 KiB copy");
+         if (round == 2)
+            assertTrue("Allocated " + perCopy + " bytes per copy", perCopy < VFSUtils.DEFAULT_BUFFER_SIZE / 2);
+      }
+   }
+}
@@ -0,0 +1,189 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs.util;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.test.vfs.AbstractVFSTest;
+import org.jboss.vfs.EntryQuery;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualFileFilter;
+import org.jboss.vfs.util.CompositeVirtualFileFilter;
+import org.jboss.vfs.util.ExtensibleFilter;
+import org.jboss.vfs.util.FileNameVirtualFileFilter;
+import org.jboss.vfs.util.IncludeFileNameVirtualFileFilter;
+import org.jboss.vfs.util.SuffixMatchFilter;
+import org.jboss.vfs.util.SuffixesExcludeFilter;
+
+/**
+ * Test for {@link CompositeVirtualFileFilter}
+ */
+public class CompositeVirtualFileFilterTestCase extends AbstractVFSTest
+{
+   public CompositeVirtualFileFilterTestCase(String name)
+   {
+      super(name);
+   }
+
+   public void testAgreesWithOperands() throws Exception
+   {
+      final VirtualFileFilter classes = new SuffixMatchFilter(".class");
+      final VirtualFileFilter noXml = new SuffixesExcludeFilter(Arrays.asList(".xml", ".MF"));
+      final VirtualFileFilter upper = new IncludeFileNameVirtualFileFilter("[A-Z].*");
+      final VirtualFileFilter extensible = new ExtensibleFilter(new String[] {"META-INF"}, new String[] {"Class"}, new String[] {".jar"});
+      final Map<String, Set<String>> excludes = new HashMap<String, Set<String>>();
+      excludes.put("/support/", null);
+      final VirtualFileFilter paths = new FileNameVirtualFileFilter(excludes);
+      final VirtualFileFilter opaque = new VirtualFileFilter()
+      {
+         public boolean accepts(VirtualFile file)
+         {
+            return file.getName().length() % 2 == 0;
+         }
+      };
+      final VirtualFile directory = getVirtualFile("/vfs/test");
+      final List<Closeable> mounts = mount(directory, "jar1.jar", "outer.jar");
+      try
+      {
+         final List<VirtualFile> files = directory.getChildrenRecursively();
+         final VirtualFileFilter[] operands = {classes, noXml, upper, extensible, paths, opaque};
+         for (VirtualFileFilter first : operands)
+         {
+            for (VirtualFileFilter second : operands)
+            {
+               final VirtualFileFilter and = CompositeVirtualFileFilter.and(first, second, extensible);
+               final VirtualFileFilter or = CompositeVirtualFileFilter.or(first, CompositeVirtualFileFilter.not(second));
+               final VirtualFileFilter nested = CompositeVirtualFileFilter.or(CompositeVirtualFileFilter.and(first, upper), CompositeVirtualFileFilter.and(second, noXml));
+               for (VirtualFile file : files)
+               {
+                  final boolean a = first.accepts(file);
+                  final boolean b = second.accepts(file);
+                  assertEquals(and + " " + file, a && b && extensible.accepts(file), and.accepts(file));
+                  assertEquals(or + " " + file, a || ! b, or.accepts(file));
+                  assertEquals(nested + " " + file, a && upper.accepts(file) || b && noXml.accepts(file), nested.accepts(file));
+               }
+            }
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(mounts);
+      }
+   }
+
+   public void testQuery() throws Exception
+   {
+      final VirtualFileFilter classes = new SuffixMatchFilter(".class");
+      final VirtualFileFilter jars = new SuffixMatchFilter(".jar");
+      final VirtualFileFilter extensible = new ExtensibleFilter();
+      // name queries alone are merged into one exact query
+      final CompositeVirtualFileFilter either = CompositeVirtualFileFilter.or(classes, jars);
+      assertEquals(new HashSet<String>(Arrays.asList(".class", ".jar")), either.getQuery().getNameSuffixes());
+      assertTrue(either.getQuery().matches("a.jar"));
+      assertFalse(either.getQuery().matches("a.xml"));
+      // an AND is narrowed by any of its operands
+      final CompositeVirtualFileFilter both = CompositeVirtualFileFilter.and(extensible, either);
+      assertEquals(new HashSet<String>(Arrays.asList(".class", ".jar")), both.getQuery().getNameSuffixes());
+      // an OR is only narrowed if all of its operands are
+      assertNull(CompositeVirtualFileFilter.or(extensible, classes).getQuery());
+      assertNotNull(CompositeVirtualFileFilter.or(both, classes).getQuery());
+      // a NOT is only narrowed if its operand is exact
+      assertNotNull(CompositeVirtualFileFilter.not(classes).getQuery());
+      assertFalse(CompositeVirtualFileFilter.not(classes).getQuery().matches("A.class"));
+      assertNull(CompositeVirtualFileFilter.not(both).getQuery());
+      assertNull(CompositeVirtualFileFilter.and(extensible).getQuery());
+      assertEquals(Collections.emptySet(), CompositeVirtualFileFilter.or().getQuery().getNameSuffixes());
+   }
+
+   public void testPushdown() throws Exception
+   {
+      final VirtualFile directory = getVirtualFile("/vfs/test");
+      final List<Closeable> mounts = mount(directory, "jar1.jar", "outer.jar", "simple.ear");
+      try
+      {
+         final VirtualFileFilter[] filters = {
+            CompositeVirtualFileFilter.and(new SuffixMatchFilter(".class"), new ExtensibleFilter(new String[0], new String[0], new String[] {"Jar1.class"})),
+            CompositeVirtualFileFilter.or(new SuffixMatchFilter(".MF"), EntryQuery.nameEquals("jar1.jar").asFilter()),
+            CompositeVirtualFileFilter.not(new SuffixesExcludeFilter(Collections.singleton(".class"))),
+         };
+         for (VirtualFileFilter filter : filters)
+         {
+            final List<VirtualFile> pushed = directory.getChildrenRecursively(filter);
+            final List<VirtualFile> visited = new ArrayList<VirtualFile>();
+            for (VirtualFile file : directory.iterateChildrenRecursively(filter))
+               visited.add(file);
+            assertFalse(filter.toString(), visited.isEmpty());
+            assertEquals(filter.toString(), new HashSet<VirtualFile>(visited), new HashSet<VirtualFile>(pushed));
+         }
+      }
+      finally
+      {
+         VFSUtils.safeClose(mounts);
+      }
+   }
+
+   public void testNulls() throws Exception
+   {
+      try
+      {
+         CompositeVirtualFileFilter.and((VirtualFileFilter[]) null);
+         fail("Should not be here");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         CompositeVirtualFileFilter.or(new SuffixMatchFilter(".class"), null);
+         fail("Should not be here");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+      try
+      {
+         CompositeVirtualFileFilter.not(null);
+         fail("Should not be here");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   private List<Closeable> mount(VirtualFile directory, String... names) throws Exception
+   {
+      final List<Closeable> mounts = new ArrayList<Closeable>();
+      for (String name : names)
+         mounts.add(VFS.mountZip(directory.getChild(name), directory.getChild(name), provider));
+      return mounts;
+   }
+}
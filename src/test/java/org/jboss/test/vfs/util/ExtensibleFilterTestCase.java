@@ -0,0 +1,87 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs.util;
+
+import junit.framework.TestCase;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.util.ExtensibleFilter;
+
+/**
+ * Test for {@link ExtensibleFilter}
+ */
+public class ExtensibleFilterTestCase extends TestCase
+{
+   public ExtensibleFilterTestCase(String name)
+   {
+      super(name);
+   }
+
+   public void testDefaults() throws Exception
+   {
+      final ExtensibleFilter filter = new ExtensibleFilter();
+      assertTrue(filter.accepts(file("app.war")));
+      assertTrue(filter.accepts(file("CVSROOT")));
+      assertFalse(filter.accepts(file("CVS")));
+      assertFalse(filter.accepts(file("#app.war#")));
+      assertFalse(filter.accepts(file("_$tmp")));
+      assertFalse(filter.accepts(file(".hidden")));
+      assertFalse(filter.accepts(file("app.war.bak")));
+      assertFalse(filter.accepts(file("app.war~")));
+      assertFalse(filter.accepts(file("deploy.sh")));
+      assertTrue(filter.accepts(file("deploy.shx")));
+   }
+
+   public void testOverlappingEntries() throws Exception
+   {
+      final ExtensibleFilter filter = new ExtensibleFilter(new String[0], new String[] {"a", "ab"}, new String[] {".x", "b.x"});
+      // a shorter prefix or suffix applies even when a longer one sorts closer to the name
+      assertFalse(filter.accepts(file("ac")));
+      assertFalse(filter.accepts(file("ab")));
+      assertFalse(filter.accepts(file("zz.x")));
+      assertFalse(filter.accepts(file("zb.x")));
+      assertTrue(filter.accepts(file("b")));
+      assertTrue(filter.accepts(file("x")));
+   }
+
+   public void testChanges() throws Exception
+   {
+      final ExtensibleFilter filter = new ExtensibleFilter();
+      assertTrue(filter.accepts(file("app.ear.failed")));
+      filter.addSuffix(".failed");
+      assertFalse(filter.accepts(file("app.ear.failed")));
+      filter.delSuffix(".failed");
+      assertTrue(filter.accepts(file("app.ear.failed")));
+      filter.addPrefix("~");
+      assertFalse(filter.accepts(file("~lock")));
+      filter.setPrefixes(new String[0]);
+      assertTrue(filter.accepts(file(".hidden")));
+      filter.setMatches(new String[] {"app.war"});
+      assertFalse(filter.accepts(file("app.war")));
+      assertTrue(filter.accepts(file("CVS")));
+   }
+
+   private static VirtualFile file(String name)
+   {
+      return VFS.getChild("/extensible-filter-test").getChild(name);
+   }
+}
@@ -0,0 +1,153 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs.util;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.jboss.test.vfs.AbstractVFSTest;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.VirtualFileFilter;
+import org.jboss.vfs.util.FilterVirtualFileVisitor;
+import org.jboss.vfs.util.GlobMatcher;
+import org.jboss.vfs.util.GlobVirtualFileFilter;
+
+/**
+ * Test for {@link GlobMatcher} and {@link GlobVirtualFileFilter}
+ */
+public class GlobMatcherTestCase extends AbstractVFSTest
+{
+   private static final String[] PATHS = {"a", "a.xml", "META-INF", "META-INF/a.xml", "META-INF/a.txt",
+         "META-INF/sub/b.xml", "x/META-INF/c.xml", "x/y/META-INF/d.xml", "WEB-INF/lib/a.jar", "WEB-INF/lib/b.zip",
+         "WEB-INF/lib/x/c.jar", "WEB-INF/classes/a.class", "lib.jar"};
+
+   public GlobMatcherTestCase(String name)
+   {
+      super(name);
+   }
+
+   public void testAgreesWithGlobPattern() throws Exception
+   {
+      final String[] globs = {"*", "*.xml", "META-INF/*.xml", "WEB-INF/lib/*.jar", "*/*/META-INF/?.xml", "?.xml",
+            "a*b*.x?l", "**"};
+      for (String glob : globs)
+      {
+         final GlobMatcher matcher = GlobMatcher.compile(glob);
+         final Pattern pattern = VFSUtils.getGlobPattern(glob);
+         for (String path : PATHS)
+            assertEquals(glob + " " + path, pattern.matcher(path).matches(), matcher.matches(path));
+      }
+   }
+
+   public void testAnyDirectories() throws Exception
+   {
+      // unlike the regular expression, ** also matches no directory at all, as in ant
+      assertMatches("**/META-INF/*.xml", "META-INF/a.xml", "x/META-INF/c.xml", "x/y/META-INF/d.xml");
+      assertMatches("WEB-INF/**/*.jar", "WEB-INF/lib/a.jar", "WEB-INF/lib/x/c.jar");
+      assertMatches("META-INF/**", "META-INF", "META-INF/a.xml", "META-INF/a.txt", "META-INF/sub/b.xml");
+      assertMatches("WEB-INF/", "WEB-INF/lib/a.jar", "WEB-INF/lib/b.zip", "WEB-INF/lib/x/c.jar", "WEB-INF/classes/a.class");
+      assertMatches("**/*.jar", "WEB-INF/lib/a.jar", "WEB-INF/lib/x/c.jar", "lib.jar");
+      assertMatches("/**/**/a.xml", "a.xml", "META-INF/a.xml");
+   }
+
+   private void assertMatches(String glob, String... expected)
+   {
+      final GlobMatcher matcher = GlobMatcher.compile(glob);
+      final List<String> matched = new ArrayList<String>();
+      for (String path : PATHS)
+      {
+         if (matcher.matches(path))
+            matched.add(path);
+      }
+      assertEquals(glob, Arrays.asList(expected), matched);
+   }
+
+   public void testPruning() throws Exception
+   {
+      final GlobMatcher matcher = GlobMatcher.compile("WEB-INF/lib/*.jar");
+      GlobMatcher.State state = matcher.getInitialState();
+      assertTrue(state.canMatchBelow());
+      assertTrue(matcher.next(state, "META-INF").isDead());
+      state = matcher.next(matcher.next(state, "WEB-INF"), "lib");
+      assertTrue(state.canMatchBelow());
+      assertFalse(state.isMatch());
+      final GlobMatcher.State jar = matcher.next(state, "a.jar");
+      assertTrue(jar.isMatch());
+      assertFalse(jar.canMatchBelow());
+      assertSame(jar, matcher.next(state, "b.jar"));
+
+      final GlobMatcher anywhere = GlobMatcher.compile("**/META-INF/*.xml");
+      assertTrue(anywhere.next(anywhere.getInitialState(), "org").canMatchBelow());
+      assertFalse(anywhere.next(anywhere.getInitialState(), "x.xml").isMatch());
+   }
+
+   public void testEscapes() throws Exception
+   {
+      final GlobMatcher matcher = GlobMatcher.compile("a\\*b/\\?");
+      assertTrue(matcher.matches("a*b/?"));
+      assertFalse(matcher.matches("axb/?"));
+      assertFalse(matcher.matches("a*b/x"));
+   }
+
+   public void testFilterPrunesWalk() throws Exception
+   {
+      final VirtualFile war = getVirtualFile("/vfs/test/WarDeployApp_web.war");
+      final Closeable mount = VFS.mountZip(war, war, provider);
+      try
+      {
+         final GlobVirtualFileFilter filter = new GlobVirtualFileFilter(war, "WEB-INF/classes/**/*.class");
+         final FilterVirtualFileVisitor visitor = new FilterVirtualFileVisitor(filter);
+         war.visit(visitor);
+         final List<VirtualFile> expected = new ArrayList<VirtualFile>();
+         for (VirtualFile file : war.getChildrenRecursively())
+         {
+            if (file.getName().endsWith(".class"))
+               expected.add(file);
+         }
+         assertEquals(2, expected.size());
+         assertEquals(new HashSet<VirtualFile>(expected), new HashSet<VirtualFile>(visitor.getMatched()));
+
+         final List<VirtualFile> entered = new ArrayList<VirtualFile>();
+         final VirtualFileFilter recurse = filter.getRecurseFilter();
+         for (VirtualFile file : war.getChildrenRecursively())
+         {
+            if (file.isDirectory() && recurse.accepts(file))
+               entered.add(file);
+         }
+         for (VirtualFile file : entered)
+            assertTrue(file.toString(), file.getPathNameRelativeTo(war).startsWith("WEB-INF"));
+         assertFalse(entered.contains(war.getChild("META-INF")));
+         assertFalse(entered.contains(war.getChild("WEB-INF/wsdl")));
+         assertFalse(filter.accepts(getVirtualFile("/vfs/test/jar1")));
+      }
+      finally
+      {
+         VFSUtils.safeClose(mount);
+      }
+   }
+}
@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs.util;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.test.vfs.AbstractVFSTest;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.util.PackageIndex;
+
+/**
+ * Test for {@link PackageIndex}
+ */
+public class PackageIndexTestCase extends AbstractVFSTest
+{
+   private final List<Closeable> mounts = new ArrayList<Closeable>();
+   private final List<VirtualFile> roots = new ArrayList<VirtualFile>();
+
+   public PackageIndexTestCase(String name)
+   {
+      super(name);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      for (String name : new String[] {"jar1.jar", "jar1", "jar2.jar", "unpacked-outer.jar"})
+      {
+         final VirtualFile root = getVirtualFile("/vfs/test/" + name);
+         if (root.isFile())
+            mounts.add(VFS.mountZip(root, root, provider));
+         roots.add(root);
+      }
+   }
+
+   protected void tearDown() throws Exception
+   {
+      VFSUtils.safeClose(mounts);
+      super.tearDown();
+   }
+
+   public void testPackagesMatchProbing() throws Exception
+   {
+      final PackageIndex index = new PackageIndex(roots);
+      assertEquals(roots, index.getRoots());
+      final Set<String> packages = new HashSet<String>();
+      for (VirtualFile root : roots)
+      {
+         for (VirtualFile file : root.getChildrenRecursively())
+         {
+            if (file.isFile())
+               packages.add(file.getParent().equals(root) ? "" : file.getParent().getPathNameRelativeTo(root));
+         }
+      }
+      assertEquals(packages, index.getPackagePaths());
+      for (String packagePath : packages)
+      {
+         final List<VirtualFile> expected = new ArrayList<VirtualFile>();
+         for (VirtualFile root : roots)
+         {
+            if (hasFiles(root.getChild(packagePath)))
+               expected.add(root);
+         }
+         assertEquals(packagePath, expected, index.getPackageRoots(packagePath.replace('/', '.')));
+      }
+   }
+
+   public void testClassAndPackageLookups() throws Exception
+   {
+      final PackageIndex index = new PackageIndex(roots);
+      final String packagePath = "org/jboss/test/vfs/support/jar1";
+      final List<VirtualFile> expected = index.getResourceRoots(packagePath + "/ClassInJar1.class");
+      assertFalse(expected.isEmpty());
+      assertEquals(expected, index.getPackageRoots("org.jboss.test.vfs.support.jar1"));
+      assertEquals(expected, index.getClassRoots("org.jboss.test.vfs.support.jar1.ClassInJar1"));
+      assertEquals(expected, index.getResourceRoots("/" + packagePath + "/Missing.class"));
+      assertTrue(index.getPackageRoots("org.jboss.missing").isEmpty());
+      assertTrue(index.getClassRoots("org.jboss.missing.Missing").isEmpty());
+      assertEquals(index.getResourceRoots("META-INF/MANIFEST.MF"), index.getPackageRoots("META-INF"));
+   }
+
+   private boolean hasFiles(VirtualFile directory)
+   {
+      for (VirtualFile child : directory.getChildren())
+      {
+         if (child.isFile())
+            return true;
+      }
+      return false;
+   }
+}
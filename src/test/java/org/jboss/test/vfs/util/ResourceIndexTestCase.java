@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.test.vfs.util;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.test.vfs.AbstractVFSTest;
+import org.jboss.vfs.VFS;
+import org.jboss.vfs.VFSUtils;
+import org.jboss.vfs.VirtualFile;
+import org.jboss.vfs.util.ResourceIndex;
+
+/**
+ * Test for {@link ResourceIndex}
+ */
+public class ResourceIndexTestCase extends AbstractVFSTest
+{
+   private final List<Closeable> mounts = new ArrayList<Closeable>();
+   private final List<VirtualFile> roots = new ArrayList<VirtualFile>();
+
+   public ResourceIndexTestCase(String name)
+   {
+      super(name);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      for (String name : new String[] {"jar1.jar", "jar1", "jar2.jar", "unpacked-outer.jar"})
+      {
+         final VirtualFile root = getVirtualFile("/vfs/test/" + name);
+         if (root.isFile())
+            mounts.add(VFS.mountZip(root, root, provider));
+         roots.add(root);
+      }
+   }
+
+   protected void tearDown() throws Exception
+   {
+      VFSUtils.safeClose(mounts);
+      super.tearDown();
+   }
+
+   public void testLookupsMatchProbing() throws Exception
+   {
+      final ResourceIndex index = new ResourceIndex(roots);
+      assertEquals(roots, index.getRoots());
+      int paths = 0;
+      for (VirtualFile root : roots)
+      {
+         for (VirtualFile file : root.getChildrenRecursively())
+         {
+            final String path = file.getPathNameRelativeTo(root);
+            final List<VirtualFile> expected = probe(path);
+            assertEquals(path, expected, index.getResources(path));
+            assertEquals(path, expected.get(0), index.getResource(path));
+            assertEquals(path, expected.get(0), index.getResource("/" + path));
+            assertTrue(path, index.contains(path));
+            paths++;
+         }
+      }
+      assertTrue(index.size() > 0);
+      assertTrue(index.size() <= paths);
+   }
+
+   public void testSharedResources() throws Exception
+   {
+      final ResourceIndex index = new ResourceIndex(roots);
+      final List<VirtualFile> manifests = index.getResources("META-INF/MANIFEST.MF");
+      assertTrue(manifests.size() > 1);
+      assertEquals(roots.get(0), index.getRoot("META-INF/MANIFEST.MF"));
+      assertEquals(roots.get(0).getChild("META-INF/MANIFEST.MF"), manifests.get(0));
+   }
+
+   public void testMissingResource() throws Exception
+   {
+      final ResourceIndex index = new ResourceIndex(roots);
+      assertNull(index.getResource("org/jboss/Missing.class"));
+      assertNull(index.getRoot("org/jboss/Missing.class"));
+      assertTrue(index.getResources("org/jboss/Missing.class").isEmpty());
+      assertFalse(index.contains("org/jboss/Missing.class"));
+   }
+
+   private List<VirtualFile> probe(String path)
+   {
+      final List<VirtualFile> found = new ArrayList<VirtualFile>();
+      for (VirtualFile root : roots)
+      {
+         final VirtualFile file = root.getChild(path);
+         if (file.exists())
+            found.add(file);
+      }
+      return found;
+   }
+}